@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+//Синтаксическое дерево в арене из примитивных массивов: узел — это номер, у которого есть вид,
+//первый ребёнок, следующий брат, номер лексемы в таблице лексем (-1 — нет) и номер последней лексемы
+//его части программы. Объекты на узел не создаются.
+public class Ast {
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final LexemeTable table;
+    private byte[] kinds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] tokens;
+    private int[] lastTokens;
+    private int size = 0;
+    private int root = -1;
+
+    public Ast(LexemeTable table) {
+        this(table, INITIAL_CAPACITY);
+    }
+
+    //capacity — ожидаемое число узлов. У каждого узла, кроме DECLARATIONS без var, своя лексема,
+    //так что для дерева всей таблицы хватает table.size() + 1 узлов и арена не перевыделяется.
+    public Ast(LexemeTable table, int capacity) {
+        this.table = table;
+        capacity = Math.max(capacity, 1);
+        this.kinds = new byte[capacity];
+        this.firstChildren = new int[capacity];
+        this.nextSiblings = new int[capacity];
+        this.tokens = new int[capacity];
+        this.lastTokens = new int[capacity];
+    }
+
+    //Добавляет узел с готовой цепочкой детей, начинающейся с firstChild (-1 — детей нет);
+    //lastToken — последняя лексема, прочитанная парсером к моменту создания узла
+    int add(NodeKind kind, int token, int firstChild, int lastToken) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            lastTokens = Arrays.copyOf(lastTokens, capacity);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        firstChildren[size] = firstChild;
+        nextSiblings[size] = -1;
+        tokens[size] = token;
+        lastTokens[size] = lastToken;
+        return size++;
+    }
+
+    //Делает next следующим братом node
+    void setNextSibling(int node, int next) {
+        nextSiblings[node] = next;
+    }
+
+    void setFirstChild(int node, int child) {
+        firstChildren[node] = child;
+    }
+
+    void setRoot(int root) {
+        this.root = root;
+    }
+
+    //Очищает арену для нового разбора, сохраняя выделенную память
+    void clear() {
+        size = 0;
+        root = -1;
+    }
+
+    //Правка таблицы лексем заменила лексемы [from, to) и сдвинула следующие на delta: у узлов [0, limit)
+    //сдвигаются номера лексем с to и последние лексемы с from (узел, кончавшийся на заменённой лексеме,
+    //теперь кончается там же, где и подставленное вместо неё поддерево)
+    void shiftTokens(int limit, int from, int to, int delta) {
+        for (int i = 0; i < limit; i++) {
+            if (tokens[i] >= to) tokens[i] += delta;
+            if (lastTokens[i] >= from) lastTokens[i] += delta;
+        }
+    }
+
+    //Корень дерева (узел PROGRAM) или -1, если дерево не построено
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LexemeTable getTable() {
+        return table;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    //Номер лексемы узла в таблице лексем или -1
+    public int token(int node) {
+        return tokens[node];
+    }
+
+    //Последняя лексема части программы, из которой построен узел. У операторов и вложенных блоков
+    //это их последняя лексема (у блока — end), у блока программы — последняя лексема перед end.
+    public int lastToken(int node) {
+        return lastTokens[node];
+    }
+
+    //Ребёнок с номером index (от 0) или -1
+    public int child(int node, int index) {
+        int child = firstChildren[node];
+        for (int i = 0; i < index && child != -1; i++) {
+            child = nextSiblings[child];
+        }
+        return child;
+    }
+
+    //Число узлов поддерева from (вместе с ним)
+    public int subtreeSize(int from) {
+        int[] count = new int[1];
+        walk(from, new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                count[0]++;
+                return true;
+            }
+        });
+        return count[0];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != -1; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    //Тип лексемы узла (для BINARY, UNARY и LITERAL — операция или вид литерала), EOF если лексемы нет
+    public TokenType tokenType(int node) {
+        return tokens[node] >= 0 ? table.type(tokens[node]) : TokenType.EOF;
+    }
+
+    public String text(int node) {
+        return tokens[node] >= 0 ? table.text(tokens[node]) : "";
+    }
+
+    //Обходит дерево от корня в глубину без рекурсии: глубина ограничена только памятью
+    public void walk(AstVisitor visitor) {
+        if (root >= 0) walk(root, visitor);
+    }
+
+    public void walk(int from, AstVisitor visitor) {
+        int[] stack = new int[16];
+        int depth = 0;
+        int node = from;
+        while (true) {
+            if (visitor.enter(this, node) && firstChildren[node] != -1) {
+                if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = node;
+                node = firstChildren[node];
+                continue;
+            }
+            visitor.exit(this, node);
+            while (node != from && nextSiblings[node] == -1) {
+                if (depth == 0) return;
+                node = stack[--depth];
+                visitor.exit(this, node);
+            }
+            if (node == from) return;
+            node = nextSiblings[node];
+        }
+    }
+
+    public void print() {
+        System.out.println("Синтаксическое дерево:");
+        walk(new AstVisitor() {
+            private int depth = 0;
+
+            @Override
+            public boolean enter(Ast ast, int node) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < depth; i++) sb.append("  ");
+                sb.append(kind(node));
+                int token = tokens[node];
+                if (token >= 0) {
+                    sb.append(" '").append(table.text(token)).append("' (")
+                            .append(table.line(token)).append(':').append(table.column(token)).append(')');
+                }
+                System.out.println(sb);
+                depth++;
+                return true;
+            }
+
+            @Override
+            public void exit(Ast ast, int node) {
+                depth--;
+            }
+        });
+    }
+}
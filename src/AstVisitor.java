@@ -0,0 +1,10 @@
+//Обход синтаксического дерева в глубину (см. Ast.walk).
+//enter() вызывается до детей узла и может вернуть false, чтобы их пропустить; exit() — после детей.
+public interface AstVisitor {
+    default boolean enter(Ast ast, int node) {
+        return true;
+    }
+
+    default void exit(Ast ast, int node) {
+    }
+}
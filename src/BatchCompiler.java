@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//Пакетная проверка множества файлов программ: лексер и парсер (оба в режиме восстановления), а для программ
+//без синтаксических ошибок и SemanticChecker — по каждому файлу на ForkJoinPool. Память ограничена: в работе
+//одновременно не больше maxFiles исходников общим размером не больше maxBytes байт — следующий файл не
+//читается, пока не освободится место (файл больше бюджета обрабатывается один). Таблица лексем и дерево файла
+//живут только во время его разбора, в итоге остаются размер, число лексем и диагностики.
+//Запуск: java BatchCompiler [--threads N] [--max-files N] [--max-bytes N] (каталог | файл | @список файлов)...
+public class BatchCompiler {
+    //Итог проверки одного файла
+    public static class Result {
+        private final Path path;
+        private final long bytes;
+        private final int tokens;
+        private final List<Diagnostic> diagnostics;
+        private final String error; // исключение при чтении или разборе (null, если его не было)
+        private final long nanos;
+
+        public Result(Path path, long bytes, int tokens, List<Diagnostic> diagnostics, String error, long nanos) {
+            this.path = path;
+            this.bytes = bytes;
+            this.tokens = tokens;
+            this.diagnostics = diagnostics;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        public Path getPath() { return path; }
+        public long getBytes() { return bytes; }
+        public int getTokens() { return tokens; }
+        public List<Diagnostic> getDiagnostics() { return diagnostics; }
+        public String getError() { return error; }
+        public long getNanos() { return nanos; }
+
+        public boolean isFailed() {
+            return error != null || !diagnostics.isEmpty();
+        }
+    }
+
+    //Сколько файлов с ошибками печатает printSummary()
+    private static final int PRINTED_FAILURES = 20;
+
+    private final ForkJoinPool pool;
+    private final int maxBytes;
+    //Места под исходники в работе: по одному разрешению на файл и на байт
+    private final Semaphore files;
+    private final Semaphore bytes;
+
+    public BatchCompiler(int threads, int maxFiles, int maxBytes) {
+        if (threads < 1 || maxFiles < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Threads and limits must be positive");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.maxBytes = maxBytes;
+        this.files = new Semaphore(maxFiles);
+        this.bytes = new Semaphore(maxBytes);
+    }
+
+    //Проверяет файлы и возвращает итоги в порядке paths. Вызывающий поток раздаёт файлы пулу,
+    //дожидаясь места под каждый следующий исходник.
+    public List<Result> compile(List<Path> paths) {
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            long size;
+            try {
+                size = Files.size(path);
+            } catch (IOException e) {
+                size = 0; // ошибку сообщит чтение файла
+            }
+            int permits = (int) Math.min(size, maxBytes);
+            files.acquireUninterruptibly();
+            bytes.acquireUninterruptibly(permits);
+            long fileSize = size;
+            tasks.add(pool.submit(() -> {
+                try {
+                    return compileFile(path, fileSize);
+                } finally {
+                    bytes.release(permits);
+                    files.release();
+                }
+            }));
+        }
+        List<Result> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Result> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static Result compileFile(Path path, long size) {
+        long start = System.nanoTime();
+        int tokens = 0;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        String error = null;
+        try {
+            Lexer lexer = new Lexer(Files.readString(path));
+            lexer.setRecoveryMode(true);
+            lexer.tokenizeAll();
+            Parser parser = new Parser(lexer.getLexemeTable());
+            parser.setRecoveryMode(true);
+            parser.parse();
+            tokens = lexer.getLexemeTable().size();
+            diagnostics.addAll(lexer.getDiagnostics().getDiagnostics());
+            diagnostics.addAll(parser.getDiagnostics().getDiagnostics());
+            if (parser.getDiagnostics().isEmpty()) {
+                SemanticChecker checker = new SemanticChecker(parser.getAst());
+                checker.check();
+                diagnostics.addAll(checker.getDiagnostics().getDiagnostics());
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e.toString();
+        }
+        return new Result(path, size, tokens, diagnostics, error, System.nanoTime() - start);
+    }
+
+    //Файлы из аргументов: каталог — все обычные файлы в нём и в подкаталогах (по порядку путей),
+    //@файл — список путей, по одному в строке
+    public static List<Path> expand(List<String> inputs) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (String input : inputs) {
+            if (input.startsWith("@")) {
+                for (String line : Files.readAllLines(Path.of(input.substring(1)))) {
+                    if (!line.isBlank()) paths.add(Path.of(line.trim()));
+                }
+            } else if (Files.isDirectory(Path.of(input))) {
+                try (Stream<Path> walk = Files.walk(Path.of(input))) {
+                    paths.addAll(walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                paths.add(Path.of(input));
+            }
+        }
+        return paths;
+    }
+
+    //Сводка: число файлов и ошибок, скорость и первые файлы с ошибками
+    public static void printSummary(List<Result> results, long nanos) {
+        long bytes = 0;
+        long tokens = 0;
+        int failed = 0;
+        int diagnostics = 0;
+        for (Result result : results) {
+            bytes += result.getBytes();
+            tokens += result.getTokens();
+            diagnostics += result.getDiagnostics().size();
+            if (result.isFailed()) failed++;
+        }
+        double seconds = nanos / 1e9;
+        System.out.printf("Файлов: %d, с ошибками: %d, диагностик: %d%n", results.size(), failed, diagnostics);
+        System.out.printf("%.1f МБ, %d лексем за %.2f с: %.0f файлов/с, %.1f млн лексем/с, %.1f МБ/с%n",
+                bytes / 1e6, tokens, seconds, results.size() / seconds, tokens / 1e6 / seconds, bytes / 1e6 / seconds);
+        int printed = 0;
+        for (Result result : results) {
+            if (!result.isFailed()) continue;
+            if (printed++ == PRINTED_FAILURES) {
+                System.out.println("...");
+                break;
+            }
+            if (result.getError() != null) {
+                System.out.println(result.getPath() + ": " + result.getError());
+            } else {
+                int more = result.getDiagnostics().size() - 1;
+                System.out.println(result.getPath() + ":" + result.getDiagnostics().get(0)
+                        + (more > 0 ? " (и ещё " + more + ")" : ""));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxFiles = 0; // по умолчанию — по два файла на поток
+        int maxBytes = 64 << 20;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-files":
+                    maxFiles = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-bytes":
+                    maxBytes = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Запуск: java BatchCompiler [--threads N] [--max-files N] [--max-bytes N] (каталог | файл | @список)...");
+            return;
+        }
+        if (maxFiles == 0) maxFiles = 2 * threads;
+        List<Path> paths = expand(inputs);
+        BatchCompiler compiler = new BatchCompiler(threads, maxFiles, maxBytes);
+        long start = System.nanoTime();
+        List<Result> results = compiler.compile(paths);
+        long nanos = System.nanoTime() - start;
+        compiler.shutdown();
+        printSummary(results, nanos);
+    }
+}
@@ -0,0 +1,951 @@
+import com.sun.management.ThreadMXBean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//Замеры производительности на синтетических программах.
+//Запуск: java Benchmark [lexer|parallel|parser|semantic|checks|expressions|errors|reparse|batch|interpreter|compiled|optimizer|grammar|normalize|chains|epsilon|sessions] [число операторов]
+public class Benchmark {
+    private static final String[] VARIABLES = {"i", "n", "s", "x", "y", "b", "Alpha1", "beta2"};
+    private static final String[] LITERALS = {"1", "42", "1011b", "17O", "99d", "1eh", "3.14", "2.5e10", "1E-3", ".5", "TRUE", "false"};
+    private static final String[] INT_VARIABLES = {"i", "n", "s", "Alpha1", "beta2"};
+    private static final String[] INT_LITERALS = {"1", "42", "1011b", "17O", "99d", "1eh"};
+    private static final String[] FLOAT_OPERANDS = {"x", "y", "3.14", "2.5e10", "1E-3", ".5"};
+    private static final String[] ARITHMETIC_OPERATORS = {"+", "-", "*", "/"};
+    private static final String[] RELATIONS = {"=", "<>", "<", "<=", ">", ">="};
+    private static final String[] BINARY_OPERATORS = {"+", "-", "*", "/", "or", "and", "=", "<>", "<", "<=", ">", ">=", "OR", "And"};
+
+    public static void main(String[] args) {
+        String what = args.length > 0 ? args[0] : "lexer";
+        int statements = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        String code = generateProgram(statements, 42);
+        System.out.printf("Программа: %d операторов, %.1f МБ%n", statements, code.length() / 1e6);
+        switch (what) {
+            case "lexer":
+                lexer(code);
+                break;
+            case "parallel":
+                parallelLexer(code);
+                break;
+            case "parser":
+                parser(code);
+                break;
+            case "semantic":
+                semantic(generateTyped(statements, 42));
+                break;
+            case "expressions":
+                String expressions = generateExpressions(statements / 10, 42);
+                System.out.printf("Выражения: %d операторов, %.1f МБ%n", statements / 10, expressions.length() / 1e6);
+                parser(expressions);
+                break;
+            case "reparse":
+                reparse(code);
+                break;
+            case "batch":
+                batch(statements);
+                break;
+            case "interpreter":
+                interpreter(statements * 50L);
+                break;
+            case "compiled":
+                compiled(statements * 50L);
+                break;
+            case "optimizer":
+                optimizer(statements * 50L);
+                break;
+            case "grammar":
+                grammar(statements / 100);
+                break;
+            case "normalize":
+                normalize(statements / 1000);
+                break;
+            case "chains":
+                chains(statements / 1000);
+                break;
+            case "epsilon":
+                epsilon();
+                break;
+            case "checks":
+                checks();
+                break;
+            case "sessions":
+                sessions(statements / 1000);
+                break;
+            case "errors":
+                errors(generateBroken(statements, 42));
+                break;
+            default:
+                System.out.println("Неизвестный замер: " + what);
+        }
+    }
+
+    //Лексер: tokenizeAll() по строке в памяти
+    static void lexer(String code) {
+        int tokens = 0;
+        for (int i = 0; i < 5; i++) {
+            Lexer lexer = new Lexer(code);
+            lexer.tokenizeAll();
+            tokens = lexer.getLexemeTable().size();
+        }
+        int runs = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            new Lexer(code).tokenizeAll();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / runs;
+        System.out.printf("lexer: %.1f мс, %.1f МБ/с, %.1f млн лексем/с%n",
+                seconds * 1e3, code.length() / 1e6 / seconds, tokens / 1e6 / seconds);
+    }
+
+    //Параллельный лексер: масштабирование по числу потоков (1 поток — последовательный разбор)
+    static void parallelLexer(String code) {
+        System.out.println("Ядер: " + Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (int i = 0; i < 3; i++) {
+                new Lexer(code).tokenizeAll(pool);
+            }
+            int runs = 5;
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                new Lexer(code).tokenizeAll(pool);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9 / runs;
+            System.out.printf("потоков %2d: %.1f мс, %.1f МБ/с%n", threads, seconds * 1e3, code.length() / 1e6 / seconds);
+            pool.shutdown();
+        }
+    }
+
+    //Синтаксический анализ уже разобранной лексером таблицы (вместе с построением дерева)
+    static void parser(String code) {
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        LexemeTable table = lexer.getLexemeTable();
+        for (int i = 0; i < 5; i++) {
+            new Parser(table).parseProgram();
+        }
+        int runs = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            new Parser(table).parseProgram();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / runs;
+        System.out.printf("parser: %.1f мс, %.1f млн лексем/с%n", seconds * 1e3, table.size() / 1e6 / seconds);
+    }
+
+    //Семантическая проверка дерева программы без ошибок типов против её синтаксического анализа
+    static void semantic(String code) {
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        parser(code);
+        Parser parser = new Parser(lexer.getLexemeTable());
+        parser.parseProgram();
+        Ast ast = parser.getAst();
+        int errors = 0;
+        for (int i = 0; i < 5; i++) {
+            SemanticChecker checker = new SemanticChecker(ast);
+            checker.check();
+            errors = checker.getDiagnostics().size();
+        }
+        int runs = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            new SemanticChecker(ast).check();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / runs;
+        System.out.printf("semantic: %d ошибок, %.1f мс, %.1f млн лексем/с%n", errors, seconds * 1e3,
+                lexer.getLexemeTable().size() / 1e6 / seconds);
+    }
+
+    //Проверка правил SemanticChecker на коротких программах: у каждой — ожидаемые виды диагностик по порядку.
+    //Ошибка в выражении даёт ему тип ERROR, поэтому неописанная переменная не тянет за собой TYPE_MISMATCH
+    static void checks() {
+        Diagnostic.Kind undeclared = Diagnostic.Kind.UNDECLARED_VARIABLE;
+        Diagnostic.Kind duplicate = Diagnostic.Kind.DUPLICATE_DECLARATION;
+        Diagnostic.Kind mismatch = Diagnostic.Kind.TYPE_MISMATCH;
+        Object[][] cases = {
+                {"i ass 1; x ass i * 2.5; b ass (i < 3) and not (x = 1); write(i, x, b)"},
+                {"z ass 1; z ass 2", undeclared},
+                {"write(i)", },
+                {"i ass 1.5", mismatch},
+                {"x ass 1; x ass i", },
+                {"b ass 1", mismatch},
+                {"if i then i ass 1", mismatch},
+                {"while x do i ass 1", mismatch},
+                {"if b = (i > 1) then i ass 1 else x ass 2", },
+                {"for b ass 1 to 3 do i ass 1", mismatch, mismatch},
+                {"for x ass 1 to 3 do i ass 1", },
+                {"for i ass 1 to 2.5 do i ass 1", mismatch},
+                {"for i ass 1 to n do x ass x + i", },
+                {"i ass b + 1", mismatch},
+                {"b ass i or b", mismatch},
+                {"b ass not i", mismatch},
+                {"i ass -b", mismatch},
+                {"b ass b < b", mismatch},
+                {"b ass b = 1", mismatch},
+                {"b ass (b + 1) * 2 > 3", mismatch},
+                {"b ass z + 1; if z * 2 then i ass 1", undeclared},
+                {"b ass -z; while z or z do i ass z", undeclared},
+                {"for z ass 1 to 3 do i ass z", undeclared},
+        };
+        int failed = 0;
+        for (Object[] test : cases) {
+            failed += check("program T;\nvar int i, n float x bool b;\nbegin\n" + test[0] + "\nend.\n",
+                    Arrays.copyOfRange(test, 1, test.length));
+        }
+        failed += check("program T;\nvar int i, n float i;\nbegin\ni ass 1\nend.\n", new Object[]{duplicate});
+        System.out.printf("checks: %d программ, не совпало %d%n", cases.length + 1, failed);
+    }
+
+    //1, если виды диагностик SemanticChecker для code отличаются от expected (и печатает их)
+    private static int check(String code, Object[] expected) {
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        Parser parser = new Parser(lexer.getLexemeTable());
+        parser.parseProgram();
+        SemanticChecker checker = new SemanticChecker(parser.getAst());
+        checker.check();
+        List<Object> kinds = new ArrayList<>();
+        for (Diagnostic diagnostic : checker.getDiagnostics().getDiagnostics()) {
+            kinds.add(diagnostic.getKind());
+        }
+        if (kinds.equals(Arrays.asList(expected))) return 0;
+        System.out.println("Ожидалось " + Arrays.toString(expected) + ":\n" + code);
+        checker.getDiagnostics().print();
+        return 1;
+    }
+
+    //Программы с циклами на iterations проходов: сумма в for, вещественная рекуррентность в while,
+    //простые числа перебором делителей и шаги Коллатца во вложенных циклах
+    static String[] loopPrograms(long iterations) {
+        long primes = Math.max(2, (long) Math.sqrt(iterations) * 20);
+        long collatz = Math.max(1, iterations / 100);
+        return new String[]{
+                "program Sum;\nvar int i, s\nbegin\n"
+                        + "  s ass 0;\n"
+                        + "  for i ass 1 to " + iterations + " do s ass s + i * 3 - i / 7;\n"
+                        + "  write(s)\nend.\n",
+                "program Real;\nvar int n float x, y\nbegin\n"
+                        + "  n ass 0; x ass 1; y ass 0;\n"
+                        + "  while n < " + iterations + " do begin x ass x * 0.999 + 1.5; y ass y + x / 3; n ass n + 1 end;\n"
+                        + "  write(x, y)\nend.\n",
+                "program Primes;\nvar int n, d, count bool prime\nbegin\n"
+                        + "  count ass 0;\n"
+                        + "  for n ass 2 to " + primes + " do begin\n"
+                        + "    prime ass true; d ass 2;\n"
+                        + "    while prime and (d * d <= n) do begin\n"
+                        + "      if n - n / d * d = 0 then prime ass false;\n"
+                        + "      d ass d + 1\n"
+                        + "    end;\n"
+                        + "    if prime then count ass count + 1\n"
+                        + "  end;\n"
+                        + "  write(count)\nend.\n",
+                "program Collatz;\nvar int n, c, steps\nbegin\n"
+                        + "  steps ass 0;\n"
+                        + "  for n ass 1 to " + collatz + " do begin\n"
+                        + "    c ass n;\n"
+                        + "    while c <> 1 do begin\n"
+                        + "      if c / 2 * 2 = c then c ass c / 2 else c ass 3 * c + 1;\n"
+                        + "      steps ass steps + 1\n"
+                        + "    end\n"
+                        + "  end;\n"
+                        + "  write(steps)\nend.\n"
+        };
+    }
+
+    //Интерпретатор промежуточного кода на программах с циклами: время прогона и байты, выделенные потоком за прогон
+    static void interpreter(long iterations) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (String code : loopPrograms(iterations)) {
+            IrProgram program = lower(code);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new Interpreter(program, InputStream.nullInputStream(), output).run();
+            for (int i = 0; i < 2; i++) {
+                new Interpreter(program, InputStream.nullInputStream(), OutputStream.nullOutputStream()).run();
+            }
+            int runs = 5;
+            long best = Long.MAX_VALUE;
+            long allocated = 0;
+            for (int i = 0; i < runs; i++) {
+                Interpreter interpreter = new Interpreter(program, InputStream.nullInputStream(),
+                        OutputStream.nullOutputStream());
+                long bytes = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                interpreter.run();
+                best = Math.min(best, System.nanoTime() - start);
+                allocated = threads.getCurrentThreadAllocatedBytes() - bytes;
+            }
+            String name = code.substring("program ".length(), code.indexOf(';'));
+            System.out.printf("%-8s код %d int, лучший прогон %.1f мс, выделено %d байт, вывод: %s%n", name,
+                    program.size(), best / 1e6, allocated, output.toString().trim());
+        }
+    }
+
+    //Байт-код JVM (BytecodeCompiler) против интерпретатора на тех же программах с циклами
+    static void compiled(long iterations) {
+        for (String code : loopPrograms(iterations)) {
+            IrProgram program = lower(code);
+            BytecodeCompiler.CompiledProgram compiled = BytecodeCompiler.compile(program);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            compiled.run(InputStream.nullInputStream(), output);
+            long interpreted = best(() -> new Interpreter(program, InputStream.nullInputStream(),
+                    OutputStream.nullOutputStream()).run());
+            long jvm = best(() -> compiled.run(InputStream.nullInputStream(), OutputStream.nullOutputStream()));
+            String name = code.substring("program ".length(), code.indexOf(';'));
+            System.out.printf("%-8s байт-код %d байт, интерпретатор %.1f мс, байт-код %.1f мс (в %.1f раза быстрее), вывод: %s%n",
+                    name, compiled.getCodeSize(), interpreted / 1e6, jvm / 1e6, (double) interpreted / jvm,
+                    output.toString().trim());
+        }
+    }
+
+    //Проходы Optimizer по одному и все вместе на программе-шаблоне: константы из литералов разных систем
+    //счисления, отключённая отладочная печать, ненужные присваивания и инвариантное выражение в цикле
+    static void optimizer(long iterations) {
+        String code = "program Template;\nvar int i, j, s, t, w, k bool debug float x\nbegin\n"
+                + "  debug ass false; k ass 1011b * 17O + 99d / 3 - 1eh; s ass 0; w ass 0;\n"
+                + "  for j ass 1 to 3 do w ass w + j * k;\n"
+                + "  for i ass 1 to " + iterations + " do begin\n"
+                + "    t ass i * k;\n"
+                + "    if debug then write(i, t);\n"
+                + "    s ass s + i * (w * w - k) - (w + k * 2) / 7;\n"
+                + "    x ass i * 0.5\n"
+                + "  end;\n"
+                + "  write(s)\nend.\n";
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        Parser parser = new Parser(lexer.getLexemeTable());
+        parser.parse();
+        SemanticChecker checker = new SemanticChecker(parser.getAst());
+        checker.check();
+        IrProgram plain = IrBuilder.build(parser.getAst(), checker);
+        long base = best(() -> new Interpreter(plain, InputStream.nullInputStream(), OutputStream.nullOutputStream()).run());
+        System.out.printf("%-12s команд %3d, интерпретатор %.1f мс%n", "без проходов", plain.instructionCount(), base / 1e6);
+        List<Set<Optimizer.Pass>> variants = new ArrayList<>();
+        for (Optimizer.Pass pass : Optimizer.Pass.values()) {
+            variants.add(EnumSet.of(pass));
+        }
+        variants.add(EnumSet.allOf(Optimizer.Pass.class));
+        for (Set<Optimizer.Pass> passes : variants) {
+            Optimizer optimizer = new Optimizer(parser.getAst(), checker, passes).run();
+            IrProgram program = IrBuilder.build(parser.getAst(), checker, optimizer);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new Interpreter(program, InputStream.nullInputStream(), output).run();
+            long time = best(() -> new Interpreter(program, InputStream.nullInputStream(),
+                    OutputStream.nullOutputStream()).run());
+            String name = passes.size() == 1 ? passes.iterator().next().name() : "ALL";
+            System.out.printf("%-12s команд %3d, интерпретатор %.1f мс (в %.2f раза быстрее), вывод: %s%n", name,
+                    program.instructionCount(), time / 1e6, (double) base / time, output.toString().trim());
+            if (passes.size() > 1) optimizer.printStatistics(plain, program);
+        }
+    }
+
+    //Анализы GrammarNormalizer на грамматике generateGrammar: каждый нетерминал выводится через следующий,
+    //так что пересчёт по всем правилам до неподвижной точки сделал бы по проходу на нетерминал
+    static void grammar(int nonTerminals) {
+        List<GrammarNormalizer.Rule> rules = generateGrammar(nonTerminals);
+        CompactGrammar.Symbols symbols = new CompactGrammar.Symbols(grammarLefts(rules), grammarTerminals(rules));
+        CompactGrammar grammar = CompactGrammar.of(symbols, rules);
+        int start = symbols.id("N0");
+        System.out.printf("Грамматика: %d нетерминалов, %d правил%n", nonTerminals, rules.size());
+        long exists = best(() -> GrammarNormalizer.languageExists(grammar, start));
+        long productive = best(() -> GrammarNormalizer.removeNonProductiveSymbols(grammar));
+        long reachable = best(() -> GrammarNormalizer.removeUnreachableSymbols(grammar, start));
+        long epsilon = best(() -> GrammarNormalizer.removeEpsilonRules(grammar, start));
+        System.out.printf("languageExists %.1f мс, removeNonProductiveSymbols %.1f мс, "
+                        + "removeUnreachableSymbols %.1f мс, removeEpsilonRules %.1f мс%n",
+                exists / 1e6, productive / 1e6, reachable / 1e6, epsilon / 1e6);
+    }
+
+    //GrammarNormalizer.normalize целиком: грамматика языка из main2 и generateGrammar; время и байты,
+    //выделенные потоком за одну нормализацию
+    static void normalize(int nonTerminals) {
+        normalizeRuns("main2", main2.START_SYMBOL, main2.NON_TERMINALS, main2.TERMINALS, main2.RULES, 1000);
+        List<GrammarNormalizer.Rule> rules = generateGrammar(nonTerminals);
+        normalizeRuns("N" + nonTerminals, "N0", grammarLefts(rules), grammarTerminals(rules), rules, 1);
+    }
+
+    //removeChainRules и normalize на грамматике generateChainGrammar
+    static void chains(int towers) {
+        List<GrammarNormalizer.Rule> rules = generateChainGrammar(towers);
+        CompactGrammar.Symbols symbols = new CompactGrammar.Symbols(grammarLefts(rules), grammarTerminals(rules));
+        CompactGrammar grammar = CompactGrammar.of(symbols, rules);
+        int result = GrammarNormalizer.removeChainRules(grammar).ruleCount();
+        long time = best(() -> GrammarNormalizer.removeChainRules(grammar));
+        System.out.printf("Грамматика: %d нетерминалов, %d правил; removeChainRules -> %d правил, %.1f мс%n",
+                grammarLefts(rules).size(), rules.size(), result, time / 1e6);
+        normalizeRuns("chains", "S", grammarLefts(rules), grammarTerminals(rules), rules, 1);
+    }
+
+    //Два порядка шагов GrammarNormalizer (Order): грамматика из main2 и худший случай generateNullableGrammar;
+    //при DEL_BEFORE_BIN правило из k символов, порождающих ε, даёт 2^k вариантов, поэтому он меряется до k = 20
+    static void epsilon() {
+        for (GrammarNormalizer.Order order : GrammarNormalizer.Order.values()) {
+            int result = GrammarNormalizer.normalize(main2.START_SYMBOL, main2.NON_TERMINALS, main2.TERMINALS,
+                    main2.RULES, order).size();
+            long time = best(() -> GrammarNormalizer.normalize(main2.START_SYMBOL, main2.NON_TERMINALS,
+                    main2.TERMINALS, main2.RULES, order));
+            System.out.printf("main2 %-15s правил %d -> %d, %.3f мс%n", order, main2.RULES.size(), result, time / 1e6);
+        }
+        for (int k : new int[]{8, 12, 16, 20, 100, 1000}) {
+            List<GrammarNormalizer.Rule> rules = generateNullableGrammar(k);
+            for (GrammarNormalizer.Order order : GrammarNormalizer.Order.values()) {
+                if (order == GrammarNormalizer.Order.DEL_BEFORE_BIN && k > 20) continue;
+                Set<String> nonTerminals = grammarLefts(rules);
+                Set<String> terminals = grammarTerminals(rules);
+                long start = System.nanoTime();
+                int result = GrammarNormalizer.normalize("S", nonTerminals, terminals, rules, order).size();
+                System.out.printf("k=%-4d %-15s правил %d -> %d, %.1f мс%n", k, order, rules.size(), result,
+                        (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    //Нормализация grammars грамматик (main2 и генераторы выше по очереди) в ForkJoinPool: у каждого вызова
+    //normalize свой GrammarNormalizer.Session, поэтому результат при любом числе потоков совпадает с
+    //последовательным, а занятая куча после сборки мусора не растёт от прогона к прогону
+    static void sessions(int grammars) {
+        String[] starts = new String[grammars];
+        List<List<GrammarNormalizer.Rule>> rules = new ArrayList<>();
+        for (int i = 0; i < grammars; i++) {
+            switch (i % 4) {
+                case 0:
+                    starts[i] = main2.START_SYMBOL;
+                    rules.add(main2.RULES);
+                    break;
+                case 1:
+                    starts[i] = "N0";
+                    rules.add(generateGrammar(20 + i % 40));
+                    break;
+                case 2:
+                    starts[i] = "S";
+                    rules.add(generateChainGrammar(1 + i % 2));
+                    break;
+                default:
+                    starts[i] = "S";
+                    rules.add(generateNullableGrammar(4 + i % 6));
+            }
+        }
+        List<List<GrammarNormalizer.Rule>> expected = new ArrayList<>();
+        for (int i = 0; i < grammars; i++) {
+            expected.add(normalizeGrammar(starts[i], rules.get(i)));
+        }
+        System.out.println("Ядер: " + Runtime.getRuntime().availableProcessors() + ", грамматик: " + grammars);
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            List<List<List<GrammarNormalizer.Rule>>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int run = 0; run < 5; run++) {
+                results.add(pool.submit(() -> IntStream.range(0, grammars).parallel()
+                        .mapToObj(i -> normalizeGrammar(starts[i], rules.get(i)))
+                        .collect(Collectors.toList())).join());
+            }
+            double millis = (System.nanoTime() - start) / 1e6 / 5;
+            pool.shutdown();
+            int differ = 0;
+            for (List<List<GrammarNormalizer.Rule>> result : results) {
+                for (int i = 0; i < grammars; i++) {
+                    if (!result.get(i).equals(expected.get(i))) differ++;
+                }
+            }
+            results.clear();
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("потоков %d: %.1f мс на прогон, отличий от последовательного %d, куча %d КБ%n",
+                    threads, millis, differ, (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+        }
+    }
+
+    private static List<GrammarNormalizer.Rule> normalizeGrammar(String start, List<GrammarNormalizer.Rule> rules) {
+        return GrammarNormalizer.normalize(start, grammarLefts(rules), grammarTerminals(rules), rules);
+    }
+
+    private static void normalizeRuns(String name, String start, Set<String> nonTerminals, Set<String> terminals,
+                                      List<GrammarNormalizer.Rule> rules, int repeats) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int result = GrammarNormalizer.normalize(start, new HashSet<>(nonTerminals), terminals, rules).size();
+        long time = best(() -> {
+            for (int i = 0; i < repeats; i++) {
+                GrammarNormalizer.normalize(start, new HashSet<>(nonTerminals), terminals, rules);
+            }
+        });
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        GrammarNormalizer.normalize(start, new HashSet<>(nonTerminals), terminals, rules);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - bytes;
+        System.out.printf("%-8s правил %d -> %d, нормализация %.3f мс, выделено %d КБ%n", name, rules.size(), result,
+                time / 1e6 / repeats, allocated / 1024);
+    }
+
+    private static Set<String> grammarLefts(List<GrammarNormalizer.Rule> rules) {
+        Set<String> lefts = new HashSet<>();
+        for (GrammarNormalizer.Rule rule : rules) {
+            lefts.add(rule.left);
+        }
+        return lefts;
+    }
+
+    //Символы правых частей, у которых нет своих правил (кроме ε)
+    private static Set<String> grammarTerminals(List<GrammarNormalizer.Rule> rules) {
+        Set<String> lefts = grammarLefts(rules);
+        Set<String> terminals = new HashSet<>();
+        for (GrammarNormalizer.Rule rule : rules) {
+            for (String sym : rule.right) {
+                if (!lefts.contains(sym) && !sym.equals("ε")) terminals.add(sym);
+            }
+        }
+        return terminals;
+    }
+
+    //Лучшее время из 5 прогонов после 3 разогревочных, нс
+    private static long best(Runnable run) {
+        for (int i = 0; i < 3; i++) {
+            run.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    //Разбор, проверка и перевод в IrProgram программы без ошибок
+    private static IrProgram lower(String code) {
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        Parser parser = new Parser(lexer.getLexemeTable());
+        parser.parse();
+        SemanticChecker checker = new SemanticChecker(parser.getAst());
+        checker.check();
+        return IrBuilder.build(parser.getAst(), checker);
+    }
+
+    //Правка одной строки: Lexer.edit() и Parser.reparse() против полного разбора уже разобранной таблицы.
+    //Правки вставляют и снова убирают "1 + " после случайного "ass", так что текст не растёт.
+    static void reparse(String code) {
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        Parser parser = new Parser(lexer.getLexemeTable());
+        parser.parseProgram();
+        for (int i = 0; i < 5; i++) {
+            new Parser(lexer.getLexemeTable()).parseProgram();
+        }
+        long full = System.nanoTime();
+        new Parser(lexer.getLexemeTable()).parseProgram();
+        full = System.nanoTime() - full;
+        Random random = new Random(42);
+        int edits = 1000;
+        long lexing = 0;
+        long parsing = 0;
+        for (int i = 0; i < edits * 2; i++) {
+            if (i == edits) { // первая половина — прогрев
+                lexing = 0;
+                parsing = 0;
+            }
+            int offset = code.indexOf(" ass ", random.nextInt(code.length() / 2)) + 5;
+            long t0 = System.nanoTime();
+            TokenEdit insert = lexer.edit(offset, 0, "1 + ");
+            long t1 = System.nanoTime();
+            parser.reparse(insert);
+            long t2 = System.nanoTime();
+            TokenEdit remove = lexer.edit(offset, 4, "");
+            long t3 = System.nanoTime();
+            parser.reparse(remove);
+            long t4 = System.nanoTime();
+            lexing += (t1 - t0) + (t3 - t2);
+            parsing += (t2 - t1) + (t4 - t3);
+        }
+        System.out.printf("reparse: Lexer.edit %.1f мкс, Parser.reparse %.1f мкс на правку; полный разбор %.1f мс%n",
+                lexing / 1e3 / (edits * 2), parsing / 1e3 / (edits * 2), full / 1e6);
+    }
+
+    //Пакетная проверка 2000 файлов (каждый десятый с ошибками) по statements / 2000 операторов:
+    //масштабирование BatchCompiler по числу потоков
+    static void batch(int statements) {
+        int files = 2000;
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("batch");
+            for (int k = 0; k < files; k++) {
+                int size = Math.max(1, statements / files);
+                String code = k % 10 == 9 ? generateBroken(size, k) : generateProgram(size, k);
+                Files.writeString(directory.resolve(String.format("p%05d.txt", k)), code);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            List<Path> paths = BatchCompiler.expand(List.of(directory.toString()));
+            System.out.println("Ядер: " + Runtime.getRuntime().availableProcessors());
+            for (int threads = 1; threads <= Math.max(4, Runtime.getRuntime().availableProcessors()); threads *= 2) {
+                BatchCompiler compiler = new BatchCompiler(threads, 2 * threads, 64 << 20);
+                for (int i = 0; i < 3; i++) {
+                    compiler.compile(paths);
+                }
+                long start = System.nanoTime();
+                List<BatchCompiler.Result> results = compiler.compile(paths);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                compiler.shutdown();
+                long tokens = 0;
+                for (BatchCompiler.Result result : results) tokens += result.getTokens();
+                System.out.printf("потоков %2d: %.0f файлов/с, %.1f млн лексем/с%n", threads, files / seconds, tokens / 1e6 / seconds);
+            }
+            for (Path path : paths) Files.delete(path);
+            Files.delete(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Разбор в режиме восстановления программы, где ошибочен каждый десятый оператор
+    static void errors(String code) {
+        Lexer lexer = new Lexer(code);
+        lexer.tokenizeAll();
+        LexemeTable table = lexer.getLexemeTable();
+        int errors = 0;
+        for (int i = 0; i < 5; i++) {
+            Parser parser = new Parser(table);
+            parser.setRecoveryMode(true);
+            parser.parseProgram();
+            errors = parser.getDiagnostics().size();
+        }
+        int runs = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            Parser parser = new Parser(table);
+            parser.setRecoveryMode(true);
+            parser.parseProgram();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / runs;
+        System.out.printf("errors: %d ошибок, %.1f мс, %.1f млн лексем/с%n", errors, seconds * 1e3, table.size() / 1e6 / seconds);
+    }
+
+    //Генерирует синтаксически корректную программу со случайными операторами
+    static String generateProgram(int statements, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("program Bench;\nvar int i, n, s float x, y bool b int Alpha1, beta2;\nbegin\n");
+        for (int k = 0; k < statements; k++) {
+            if (k > 0) sb.append(";\n");
+            if (random.nextInt(10) == 0) sb.append("{ комментарий ").append(k).append(" }\n");
+            appendStatement(sb, random, 0);
+        }
+        sb.append("\nend.\n");
+        return sb.toString();
+    }
+
+    //Программа без ошибок типов: операторы как в generateProgram, но выражения подобраны по типам переменных
+    static String generateTyped(int statements, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("program Bench;\nvar int i, n, s float x, y bool b int Alpha1, beta2;\nbegin\n");
+        for (int k = 0; k < statements; k++) {
+            if (k > 0) sb.append(";\n");
+            appendTypedStatement(sb, random, 0);
+        }
+        sb.append("\nend.\n");
+        return sb.toString();
+    }
+
+    private static void appendTypedStatement(StringBuilder sb, Random random, int depth) {
+        String v = INT_VARIABLES[random.nextInt(INT_VARIABLES.length)];
+        switch (random.nextInt(depth > 2 ? 4 : 10)) {
+            case 0:
+                sb.append(v).append(" ass ");
+                appendIntExpression(sb, random, 0);
+                break;
+            case 1:
+                sb.append(random.nextBoolean() ? "x" : "y").append(" ass ");
+                appendNumberExpression(sb, random, 0);
+                break;
+            case 2:
+                sb.append("b ass ");
+                appendBoolExpression(sb, random, 0);
+                break;
+            case 3:
+                sb.append("write(");
+                appendNumberExpression(sb, random, 0);
+                sb.append(", b)");
+                break;
+            case 4:
+                sb.append("if ");
+                appendBoolExpression(sb, random, 0);
+                sb.append(" then ");
+                appendTypedStatement(sb, random, depth + 1);
+                if (random.nextBoolean()) {
+                    sb.append(" else ");
+                    appendTypedStatement(sb, random, depth + 1);
+                }
+                break;
+            case 5:
+                sb.append("while ");
+                appendBoolExpression(sb, random, 0);
+                sb.append(" do ");
+                appendTypedStatement(sb, random, depth + 1);
+                break;
+            case 6:
+                sb.append("for ").append(v).append(" ass 1 to ");
+                appendIntExpression(sb, random, 0);
+                sb.append(" do ");
+                appendTypedStatement(sb, random, depth + 1);
+                break;
+            case 7:
+                sb.append("read(x, y, n)");
+                break;
+            default:
+                sb.append("begin\n");
+                int count = 1 + random.nextInt(4);
+                for (int j = 0; j < count; j++) {
+                    if (j > 0) sb.append(";\n");
+                    appendTypedStatement(sb, random, depth + 1);
+                }
+                sb.append("\nend");
+        }
+    }
+
+    private static void appendIntExpression(StringBuilder sb, Random random, int depth) {
+        switch (random.nextInt(depth > 2 ? 2 : 5)) {
+            case 0:
+                sb.append(INT_VARIABLES[random.nextInt(INT_VARIABLES.length)]);
+                break;
+            case 1:
+                sb.append(INT_LITERALS[random.nextInt(INT_LITERALS.length)]);
+                break;
+            case 2:
+                sb.append("-(");
+                appendIntExpression(sb, random, depth + 1);
+                sb.append(')');
+                break;
+            default:
+                appendIntExpression(sb, random, depth + 1);
+                sb.append(' ').append(ARITHMETIC_OPERATORS[random.nextInt(ARITHMETIC_OPERATORS.length)]).append(' ');
+                appendIntExpression(sb, random, depth + 1);
+        }
+    }
+
+    //Выражение типа int или float
+    private static void appendNumberExpression(StringBuilder sb, Random random, int depth) {
+        switch (random.nextInt(depth > 2 ? 2 : 4)) {
+            case 0:
+                appendIntExpression(sb, random, depth + 1);
+                break;
+            case 1:
+                sb.append(FLOAT_OPERANDS[random.nextInt(FLOAT_OPERANDS.length)]);
+                break;
+            default:
+                sb.append('(');
+                appendNumberExpression(sb, random, depth + 1);
+                sb.append(") ").append(ARITHMETIC_OPERATORS[random.nextInt(ARITHMETIC_OPERATORS.length)]).append(' ');
+                appendNumberExpression(sb, random, depth + 1);
+        }
+    }
+
+    private static void appendBoolExpression(StringBuilder sb, Random random, int depth) {
+        switch (random.nextInt(depth > 2 ? 3 : 6)) {
+            case 0:
+                sb.append(random.nextBoolean() ? "b" : random.nextBoolean() ? "TRUE" : "false");
+                break;
+            case 1:
+            case 2:
+                appendNumberExpression(sb, random, depth + 1);
+                sb.append(' ').append(RELATIONS[random.nextInt(RELATIONS.length)]).append(' ');
+                appendNumberExpression(sb, random, depth + 1);
+                break;
+            case 3:
+                sb.append("not (");
+                appendBoolExpression(sb, random, depth + 1);
+                sb.append(')');
+                break;
+            default:
+                sb.append('(');
+                appendBoolExpression(sb, random, depth + 1);
+                sb.append(random.nextBoolean() ? ") or (" : ") and (");
+                appendBoolExpression(sb, random, depth + 1);
+                sb.append(')');
+        }
+    }
+
+    //Грамматика из цепочки нетерминалов N0 … N(n-1): Ni → ti N(i+1) | N(i+1) N(i+2), у каждого третьего ещё
+    //цепное правило Ni → N(i+1). Конечные слова и ε выводят только последние два нетерминала, так что
+    //выводимость и порождение ε распространяются от конца цепочки к началу по одному нетерминалу
+    static List<GrammarNormalizer.Rule> generateGrammar(int nonTerminals) {
+        List<GrammarNormalizer.Rule> rules = new ArrayList<>();
+        for (int i = 0; i < nonTerminals; i++) {
+            String left = "N" + i;
+            if (i + 1 < nonTerminals) rules.add(new GrammarNormalizer.Rule(left, "t" + i % 10 + " N" + (i + 1)));
+            if (i + 2 < nonTerminals) rules.add(new GrammarNormalizer.Rule(left, "N" + (i + 1) + " N" + (i + 2)));
+            if (i + 1 < nonTerminals && i % 3 == 0) rules.add(new GrammarNormalizer.Rule(left, "N" + (i + 1)));
+            if (i + 2 >= nonTerminals) {
+                rules.add(new GrammarNormalizer.Rule(left, "t0"));
+                rules.add(new GrammarNormalizer.Rule(left, "ε"));
+            }
+        }
+        return rules;
+    }
+
+    //Грамматика с длинными цепочками, как Оператор → Составной | Присваивание | … и Выражение → Операнд →
+    //Слагаемое → Множитель: towers башен по 50 уровней, у уровня L(i) цепные правила на семь следующих
+    //уровней, правило ti и через уровень L(i) → L(i+1) oi L(i+1); каждый десятый уровень замыкает цепной
+    //цикл на девять уровней вверх. Начальный символ S → L0 каждой башни
+    static List<GrammarNormalizer.Rule> generateChainGrammar(int towers) {
+        int depth = 50;
+        List<GrammarNormalizer.Rule> rules = new ArrayList<>();
+        for (int t = 0; t < towers; t++) {
+            rules.add(new GrammarNormalizer.Rule("S", "L" + t + "_0"));
+            for (int i = 0; i < depth; i++) {
+                String left = "L" + t + "_" + i;
+                for (int d = 1; d <= 7 && i + d < depth; d++) {
+                    rules.add(new GrammarNormalizer.Rule(left, "L" + t + "_" + (i + d)));
+                }
+                rules.add(new GrammarNormalizer.Rule(left, "t" + i % 10));
+                if (i % 2 == 0 && i + 1 < depth) {
+                    String next = "L" + t + "_" + (i + 1);
+                    rules.add(new GrammarNormalizer.Rule(left, next + " o" + i % 10 + " " + next));
+                }
+                if (i % 10 == 9) rules.add(new GrammarNormalizer.Rule(left, "L" + t + "_" + (i - 9)));
+            }
+        }
+        return rules;
+    }
+
+    //Худший случай удаления ε-правил: S → N1 N2 … Nk, Ni → ai | ε
+    static List<GrammarNormalizer.Rule> generateNullableGrammar(int k) {
+        List<GrammarNormalizer.Rule> rules = new ArrayList<>();
+        StringBuilder right = new StringBuilder();
+        for (int i = 1; i <= k; i++) {
+            right.append(" N").append(i);
+            rules.add(new GrammarNormalizer.Rule("N" + i, "a" + i));
+            rules.add(new GrammarNormalizer.Rule("N" + i, "ε"));
+        }
+        rules.add(0, new GrammarNormalizer.Rule("S", right.toString()));
+        return rules;
+    }
+
+    //Программа, в которой каждый десятый оператор начинается с лишней лексемы
+    static String generateBroken(int statements, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("program Bench;\nvar int i, n, s float x, y bool b int Alpha1, beta2;\nbegin\n");
+        for (int k = 0; k < statements; k++) {
+            if (k > 0) sb.append(";\n");
+            if (k % 10 == 9) sb.append(BINARY_OPERATORS[random.nextInt(BINARY_OPERATORS.length)]).append(' ');
+            appendStatement(sb, random, 0);
+        }
+        sb.append("\nend.\n");
+        return sb.toString();
+    }
+
+    //Программа из присваиваний с длинными выражениями: глубокие скобки, цепочки not/- и все уровни операций
+    static String generateExpressions(int statements, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("program Bench;\nvar int i, n, s float x, y bool b int Alpha1, beta2;\nbegin\n");
+        for (int k = 0; k < statements; k++) {
+            if (k > 0) sb.append(";\n");
+            sb.append(VARIABLES[random.nextInt(VARIABLES.length)]).append(" ass ");
+            appendLongExpression(sb, random, 0);
+        }
+        sb.append("\nend.\n");
+        return sb.toString();
+    }
+
+    private static void appendLongExpression(StringBuilder sb, Random random, int depth) {
+        int terms = depth > 6 ? 1 : 1 + random.nextInt(4);
+        for (int t = 0; t < terms; t++) {
+            if (t > 0) sb.append(' ').append(BINARY_OPERATORS[random.nextInt(BINARY_OPERATORS.length)]).append(' ');
+            for (int u = random.nextInt(4) - 2; u > 0; u--) sb.append(random.nextBoolean() ? "not " : "-");
+            if (depth < 8 && random.nextInt(3) == 0) {
+                sb.append('(');
+                appendLongExpression(sb, random, depth + 1);
+                sb.append(')');
+            } else {
+                sb.append(random.nextBoolean() ? VARIABLES[random.nextInt(VARIABLES.length)] : LITERALS[random.nextInt(LITERALS.length)]);
+            }
+        }
+    }
+
+    private static void appendStatement(StringBuilder sb, Random random, int depth) {
+        String v = VARIABLES[random.nextInt(VARIABLES.length)];
+        switch (random.nextInt(depth > 2 ? 3 : 9)) {
+            case 0:
+            case 1:
+                sb.append(v).append(" ass ");
+                appendExpression(sb, random, 0);
+                break;
+            case 2:
+                sb.append("write(");
+                appendExpression(sb, random, 0);
+                sb.append(", ").append(v).append(")");
+                break;
+            case 3:
+                sb.append("if ");
+                appendExpression(sb, random, 0);
+                sb.append(" then ");
+                appendStatement(sb, random, depth + 1);
+                if (random.nextBoolean()) {
+                    sb.append(" else ");
+                    appendStatement(sb, random, depth + 1);
+                }
+                break;
+            case 4:
+                sb.append("while ");
+                appendExpression(sb, random, 0);
+                sb.append(" do ");
+                appendStatement(sb, random, depth + 1);
+                break;
+            case 5:
+                sb.append("for ").append(v).append(" ass 1 to ");
+                appendExpression(sb, random, 0);
+                sb.append(" do ");
+                appendStatement(sb, random, depth + 1);
+                break;
+            case 6:
+                sb.append("read(x, y, n)");
+                break;
+            default:
+                sb.append("begin\n");
+                int count = 1 + random.nextInt(4);
+                for (int j = 0; j < count; j++) {
+                    if (j > 0) sb.append(";\n");
+                    appendStatement(sb, random, depth + 1);
+                }
+                sb.append("\nend");
+        }
+    }
+
+    private static void appendExpression(StringBuilder sb, Random random, int depth) {
+        switch (random.nextInt(depth > 2 ? 2 : 6)) {
+            case 0:
+                sb.append(VARIABLES[random.nextInt(VARIABLES.length)]);
+                break;
+            case 1:
+                sb.append(LITERALS[random.nextInt(LITERALS.length)]);
+                break;
+            case 2:
+                sb.append(random.nextBoolean() ? "not " : "-");
+                appendExpression(sb, random, depth + 1);
+                break;
+            case 3:
+                sb.append('(');
+                appendExpression(sb, random, depth + 1);
+                sb.append(')');
+                break;
+            default:
+                appendExpression(sb, random, depth + 1);
+                sb.append(' ').append(BINARY_OPERATORS[random.nextInt(BINARY_OPERATORS.length)]).append(' ');
+                appendExpression(sb, random, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,471 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+//Перевод IrProgram в байт-код JVM: программа становится статическим методом run(ProgramIo) скрытого класса
+//(MethodHandles.Lookup.defineHiddenClass), который HotSpot компилирует как обычный Java-код. Переменные —
+//типизированные локальные переменные метода: int — long (целые в языке 64-битные), float — double,
+//bool — boolean; служебные ячейки IrProgram тоже. Команды стековой машины IrProgram переводятся одна
+//в одну с типами из её описаний, сравнение перед JUMP_IF_FALSE сливается с ним в один условный переход.
+//Деление на ноль и ошибки ввода — те же RuntimeException, что у Interpreter; read и write идут через ProgramIo.
+//Ограничение: весь код — один метод, так что байт-код программы не может превышать 64 КБ.
+public class BytecodeCompiler {
+    //Скомпилированная программа
+    public static class CompiledProgram {
+        private final MethodHandle run;
+        private final int codeSize;
+
+        CompiledProgram(MethodHandle run, int codeSize) {
+            this.run = run;
+            this.codeSize = codeSize;
+        }
+
+        //Длина байт-кода метода run
+        public int getCodeSize() { return codeSize; }
+
+        public void run(InputStream in, OutputStream out) {
+            ProgramIo io = new ProgramIo(in, out);
+            try {
+                run.invokeExact(io);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            } finally {
+                io.flush();
+            }
+        }
+    }
+
+    private static final String CLASS_NAME = "CompiledCode";
+    private static final String IO = "ProgramIo";
+
+    // Коды команд JVM
+    private static final int ICONST_0 = 3;
+    private static final int ICONST_1 = 4;
+    private static final int LCONST_0 = 9;
+    private static final int LCONST_1 = 10;
+    private static final int DCONST_0 = 14;
+    private static final int DCONST_1 = 15;
+    private static final int BIPUSH = 16;
+    private static final int SIPUSH = 17;
+    private static final int LDC_W = 19;
+    private static final int LDC2_W = 20;
+    private static final int ILOAD = 21;
+    private static final int LLOAD = 22;
+    private static final int DLOAD = 24;
+    private static final int ALOAD_0 = 42;
+    private static final int ISTORE = 54;
+    private static final int LSTORE = 55;
+    private static final int DSTORE = 57;
+    private static final int POP = 87;
+    private static final int DUP_X2 = 91;
+    private static final int DUP2 = 92;
+    private static final int SWAP = 95;
+    private static final int LADD = 97;
+    private static final int DADD = 99;
+    private static final int LSUB = 101;
+    private static final int DSUB = 103;
+    private static final int LMUL = 105;
+    private static final int DMUL = 107;
+    private static final int LDIV = 109;
+    private static final int DDIV = 111;
+    private static final int LNEG = 117;
+    private static final int DNEG = 119;
+    private static final int IAND = 126;
+    private static final int IOR = 128;
+    private static final int IXOR = 130;
+    private static final int L2D = 138;
+    private static final int LCMP = 148;
+    private static final int DCMPL = 151;
+    private static final int DCMPG = 152;
+    private static final int IFEQ = 153;
+    private static final int IFNE = 154;
+    private static final int IFLT = 155;
+    private static final int IFGE = 156;
+    private static final int IFGT = 157;
+    private static final int IFLE = 158;
+    private static final int IF_ICMPEQ = 159;
+    private static final int IF_ICMPNE = 160;
+    private static final int GOTO = 167;
+    private static final int RETURN = 177;
+    private static final int INVOKEVIRTUAL = 182;
+    private static final int INVOKESTATIC = 184;
+    private static final int ATHROW = 191;
+    private static final int WIDE = 196;
+
+    private final IrProgram program;
+    private final int[] ir;
+    private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, "java/lang/Object");
+    private byte[] code = new byte[1024];
+    private int size = 0;
+    //Локальная переменная JVM каждого слота (0 — ProgramIo)
+    private final int[] locals;
+    private int localCount = 1;
+    //Смещение в байт-коде каждой команды IrProgram и команды, на которые есть переходы
+    private final int[] offsets;
+    private final boolean[] targets;
+    //Переходы для дописывания: место команды перехода и адрес цели в IrProgram, по два числа на переход
+    private int[] fixups = new int[64];
+    private int fixupCount = 0;
+    //Типы значений на стеке по ходу перевода
+    private final ValueType[] stack;
+    private int sp = 0;
+
+    private BytecodeCompiler(IrProgram program) {
+        this.program = program;
+        this.ir = program.code;
+        this.locals = new int[program.slotCount()];
+        this.offsets = new int[ir.length + 1];
+        this.targets = new boolean[ir.length + 1];
+        this.stack = new ValueType[program.maxStack + 1];
+    }
+
+    public static CompiledProgram compile(IrProgram program) {
+        BytecodeCompiler compiler = new BytecodeCompiler(program);
+        byte[] bytes = compiler.translate();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(void.class, ProgramIo.class));
+            return new CompiledProgram(run, compiler.size);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] translate() {
+        for (int slot = 0; slot < locals.length; slot++) {
+            ValueType type = program.slotTypes[slot];
+            locals[slot] = localCount;
+            localCount += type == ValueType.BOOL ? 1 : 2;
+            emit(type == ValueType.INT ? LCONST_0 : type == ValueType.FLOAT ? DCONST_0 : ICONST_0);
+            local(storeOperation(type), locals[slot]);
+        }
+        findTargets();
+        for (int pc = 0; pc < ir.length; ) {
+            offsets[pc] = size;
+            pc = translate(pc);
+        }
+        offsets[ir.length] = size;
+        for (int i = 0; i < fixupCount; i += 2) {
+            patch(fixups[i], offsets[fixups[i + 1]]);
+        }
+        byte[] bytecode = Arrays.copyOf(code, size);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "run", "(L" + IO + ";)V",
+                bytecode, 2 * program.maxStack + 4, localCount);
+        return writer.toByteArray();
+    }
+
+    //Переводит команду по адресу pc; возвращает адрес следующей непереведённой команды
+    private int translate(int pc) {
+        int op = ir[pc];
+        switch (op) {
+            case IrProgram.HALT:
+                emit(RETURN);
+                return pc + 1;
+            case IrProgram.PUSH:
+                pushConstant(ir[pc + 1]);
+                return pc + 2;
+            case IrProgram.LOAD: {
+                ValueType type = program.slotTypes[ir[pc + 1]];
+                local(loadOperation(type), locals[ir[pc + 1]]);
+                push(type);
+                return pc + 2;
+            }
+            case IrProgram.STORE:
+                pop();
+                local(storeOperation(program.slotTypes[ir[pc + 1]]), locals[ir[pc + 1]]);
+                return pc + 2;
+            case IrProgram.IADD:
+                return binary(LADD, ValueType.INT, pc);
+            case IrProgram.ISUB:
+                return binary(LSUB, ValueType.INT, pc);
+            case IrProgram.IMUL:
+                return binary(LMUL, ValueType.INT, pc);
+            case IrProgram.IDIV: {
+                // if (делитель == 0) throw ProgramIo.divisionByZero(строка)
+                emit(DUP2);
+                emit(LCONST_0);
+                emit(LCMP);
+                int check = size;
+                emit(IFNE);
+                emit2(0);
+                pushInt(ir[pc + 1]);
+                emit(INVOKESTATIC);
+                emit2(writer.methodRef(IO, "divisionByZero", "(I)Ljava/lang/RuntimeException;"));
+                emit(ATHROW);
+                patch(check, size);
+                binary(LDIV, ValueType.INT, pc);
+                return pc + 2;
+            }
+            case IrProgram.INEG:
+                emit(LNEG);
+                return pc + 1;
+            case IrProgram.FADD:
+                return binary(DADD, ValueType.FLOAT, pc);
+            case IrProgram.FSUB:
+                return binary(DSUB, ValueType.FLOAT, pc);
+            case IrProgram.FMUL:
+                return binary(DMUL, ValueType.FLOAT, pc);
+            case IrProgram.FDIV:
+                return binary(DDIV, ValueType.FLOAT, pc);
+            case IrProgram.FNEG:
+                emit(DNEG);
+                return pc + 1;
+            case IrProgram.I2F:
+                emit(L2D);
+                pop();
+                push(ValueType.FLOAT);
+                return pc + 1;
+            case IrProgram.AND:
+                return binary(IAND, ValueType.BOOL, pc);
+            case IrProgram.OR:
+                return binary(IOR, ValueType.BOOL, pc);
+            case IrProgram.NOT:
+                emit(ICONST_1);
+                emit(IXOR);
+                return pc + 1;
+            case IrProgram.JUMP:
+                jump(GOTO, ir[pc + 1]);
+                return pc + 2;
+            case IrProgram.JUMP_IF_FALSE:
+                pop();
+                jump(IFEQ, ir[pc + 1]);
+                return pc + 2;
+            case IrProgram.FOR_TEST:
+                local(LLOAD, locals[ir[pc + 1]]);
+                local(LLOAD, locals[ir[pc + 2]]);
+                emit(LCMP);
+                jump(IFGT, ir[pc + 3]);
+                return pc + 4;
+            case IrProgram.INC:
+                local(LLOAD, locals[ir[pc + 1]]);
+                emit(LCONST_1);
+                emit(LADD);
+                local(LSTORE, locals[ir[pc + 1]]);
+                return pc + 2;
+            case IrProgram.READ_INT:
+            case IrProgram.READ_FLOAT:
+            case IrProgram.READ_BOOL: {
+                ValueType type = program.slotTypes[ir[pc + 1]];
+                emit(ALOAD_0);
+                pushInt(ir[pc + 2]);
+                emit(INVOKEVIRTUAL);
+                emit2(op == IrProgram.READ_INT ? writer.methodRef(IO, "readInt", "(I)J")
+                        : op == IrProgram.READ_FLOAT ? writer.methodRef(IO, "readFloat", "(I)D")
+                        : writer.methodRef(IO, "readBool", "(I)Z"));
+                local(storeOperation(type), locals[ir[pc + 1]]);
+                return pc + 3;
+            }
+            case IrProgram.WRITE_INT:
+            case IrProgram.WRITE_FLOAT:
+                // ProgramIo под значение из двух слов стека: dup_x2, pop
+                pop();
+                emit(ALOAD_0);
+                emit(DUP_X2);
+                emit(POP);
+                emit(INVOKEVIRTUAL);
+                emit2(op == IrProgram.WRITE_INT ? writer.methodRef(IO, "writeInt", "(J)V")
+                        : writer.methodRef(IO, "writeFloat", "(D)V"));
+                return pc + 1;
+            case IrProgram.WRITE_BOOL:
+                pop();
+                emit(ALOAD_0);
+                emit(SWAP);
+                emit(INVOKEVIRTUAL);
+                emit2(writer.methodRef(IO, "writeBool", "(Z)V"));
+                return pc + 1;
+            case IrProgram.WRITE_LINE:
+                emit(ALOAD_0);
+                emit(INVOKEVIRTUAL);
+                emit2(writer.methodRef(IO, "writeLine", "()V"));
+                return pc + 1;
+            default:
+                if (op >= IrProgram.IEQ && op <= IrProgram.FGE) return compare(op, pc);
+                throw new IllegalStateException("Unknown opcode " + op + " at " + pc);
+        }
+    }
+
+    private int binary(int operation, ValueType type, int pc) {
+        emit(operation);
+        pop();
+        pop();
+        push(type);
+        return pc + 1;
+    }
+
+    //Сравнение: переход по его ложности, слитый со следующим JUMP_IF_FALSE, или значение 0/1
+    private int compare(int op, int pc) {
+        ValueType type = pop();
+        pop();
+        int whenFalse;
+        if (type == ValueType.BOOL) {
+            whenFalse = op == IrProgram.IEQ ? IF_ICMPNE : IF_ICMPEQ;
+        } else if (op <= IrProgram.IGE) {
+            emit(LCMP);
+            whenFalse = negatedBranch(op - IrProgram.IEQ);
+        } else {
+            // NaN: dcmpg даёт 1, dcmpl — -1, так что сравнение с NaN всегда ложно, а <> — истинно
+            emit(op == IrProgram.FLT || op == IrProgram.FLE ? DCMPG : DCMPL);
+            whenFalse = negatedBranch(op - IrProgram.FEQ);
+        }
+        int next = pc + 1;
+        if (ir[next] == IrProgram.JUMP_IF_FALSE && !targets[next]) {
+            offsets[next] = size;
+            jump(whenFalse, ir[next + 1]);
+            return next + 2;
+        }
+        // whenFalse +7; iconst_1; goto +4; iconst_0
+        emit(whenFalse);
+        emit2(7);
+        emit(ICONST_1);
+        emit(GOTO);
+        emit2(4);
+        emit(ICONST_0);
+        push(ValueType.BOOL);
+        return next;
+    }
+
+    //Переход по ложности отношения после lcmp или dcmp: порядок как у IEQ..IGE
+    private static int negatedBranch(int relation) {
+        switch (relation) {
+            case 0: return IFNE;
+            case 1: return IFEQ;
+            case 2: return IFGE;
+            case 3: return IFGT;
+            case 4: return IFLE;
+            default: return IFLT;
+        }
+    }
+
+    private void pushConstant(int constant) {
+        long value = program.constants[constant];
+        ValueType type = program.constantTypes[constant];
+        switch (type) {
+            case INT:
+                if (value == 0 || value == 1) {
+                    emit(value == 0 ? LCONST_0 : LCONST_1);
+                } else {
+                    emit(LDC2_W);
+                    emit2(writer.longConstant(value));
+                }
+                break;
+            case FLOAT:
+                if (value == 0 || value == Double.doubleToRawLongBits(1.0)) {
+                    emit(value == 0 ? DCONST_0 : DCONST_1);
+                } else {
+                    emit(LDC2_W);
+                    emit2(writer.doubleConstant(value));
+                }
+                break;
+            default:
+                emit(value == 0 ? ICONST_0 : ICONST_1);
+                break;
+        }
+        push(type);
+    }
+
+    private void pushInt(int value) {
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(BIPUSH);
+            emit(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emit(SIPUSH);
+            emit2(value);
+        } else {
+            emit(LDC_W);
+            emit2(writer.intConstant(value));
+        }
+    }
+
+    private static int loadOperation(ValueType type) {
+        return type == ValueType.INT ? LLOAD : type == ValueType.FLOAT ? DLOAD : ILOAD;
+    }
+
+    private static int storeOperation(ValueType type) {
+        return type == ValueType.INT ? LSTORE : type == ValueType.FLOAT ? DSTORE : ISTORE;
+    }
+
+    //Загрузка или запись локальной переменной; номера больше 255 — через wide
+    private void local(int operation, int index) {
+        if (index > 255) {
+            emit(WIDE);
+            emit(operation);
+            emit2(index);
+        } else {
+            emit(operation);
+            emit(index);
+        }
+    }
+
+    //Команды IrProgram, на которые есть переходы: сравнение перед ними нельзя сливать с переходом
+    private void findTargets() {
+        for (int pc = 0; pc < ir.length; ) {
+            switch (ir[pc]) {
+                case IrProgram.JUMP:
+                case IrProgram.JUMP_IF_FALSE:
+                    targets[ir[pc + 1]] = true;
+                    pc += 2;
+                    break;
+                case IrProgram.FOR_TEST:
+                    targets[ir[pc + 3]] = true;
+                    pc += 4;
+                    break;
+                case IrProgram.PUSH:
+                case IrProgram.LOAD:
+                case IrProgram.STORE:
+                case IrProgram.IDIV:
+                case IrProgram.INC:
+                    pc += 2;
+                    break;
+                case IrProgram.READ_INT:
+                case IrProgram.READ_FLOAT:
+                case IrProgram.READ_BOOL:
+                    pc += 3;
+                    break;
+                default:
+                    pc++;
+            }
+        }
+    }
+
+    private void jump(int operation, int target) {
+        if (fixupCount + 2 > fixups.length) fixups = Arrays.copyOf(fixups, fixups.length * 2);
+        fixups[fixupCount++] = size;
+        fixups[fixupCount++] = target;
+        emit(operation);
+        emit2(0);
+    }
+
+    //Записывает в переход по адресу at смещение до target
+    private void patch(int at, int target) {
+        int offset = target - at;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new IllegalStateException("Program is too large for JVM branch offsets");
+        }
+        code[at + 1] = (byte) (offset >> 8);
+        code[at + 2] = (byte) offset;
+    }
+
+    private void push(ValueType type) {
+        stack[sp++] = type;
+    }
+
+    private ValueType pop() {
+        return stack[--sp];
+    }
+
+    private void emit(int b) {
+        if (size == code.length) code = Arrays.copyOf(code, size * 2);
+        code[size++] = (byte) b;
+    }
+
+    private void emit2(int value) {
+        emit(value >> 8);
+        emit(value);
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//Источник символов для лексера.
+//Смещения абсолютные (от начала входа), за концом входа возвращается '\0'.
+public abstract class CharSource {
+    //Размер буфера потокового чтения по умолчанию
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    //Возвращает символ по абсолютному смещению или '\0', если вход закончился
+    public abstract char charAt(int offset);
+
+    //Возвращает текст диапазона [start, end)
+    public abstract String text(int start, int end);
+
+    //Сообщает источнику, что символы до смещения offset больше не понадобятся
+    public void release(int offset) {
+    }
+
+    //Длина входа или -1, если она заранее неизвестна (потоковый источник)
+    public int length() {
+        return -1;
+    }
+
+    //Тот же текст, обрезанный по смещению end: дальше end возвращается '\0'.
+    //Нужен для разбора участков входа; поддерживается только источниками, хранящими текст.
+    public CharSource limit(int end) {
+        throw new UnsupportedOperationException("Source cannot be split: " + getClass().getSimpleName());
+    }
+
+    //Новый источник с текстом после правки: removedLength символов с offset заменены на inserted.
+    //Поддерживается только строковым источником (см. Lexer.edit).
+    public CharSource edit(int offset, int removedLength, String inserted) {
+        throw new UnsupportedOperationException("Source cannot be edited: " + getClass().getSimpleName());
+    }
+
+    //true, если текст уже прочитанных диапазонов доступен всё время жизни источника
+    //и лексемы могут строить значение лениво
+    public boolean retainsText() {
+        return true;
+    }
+
+    //true, если смещения считаются в байтах UTF-8, а не в символах
+    public boolean isByteEncoded() {
+        return false;
+    }
+
+    //Источник над строкой, целиком лежащей в памяти
+    public static CharSource of(String input) {
+        return new StringSource(input);
+    }
+
+    //Потоковый источник над Reader с ограниченным буфером подкачки
+    public static CharSource of(Reader reader, int bufferSize) {
+        return new ReaderSource(reader, bufferSize);
+    }
+
+    //Источник над отображённым в память участком файла (UTF-8)
+    public static CharSource map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapped region too large: " + size + " bytes");
+        }
+        return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+    }
+
+    //Отображает в память весь файл
+    public static CharSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return map(channel, 0, channel.size());
+        }
+    }
+
+    static final class StringSource extends CharSource {
+        private final String input;
+        private final int end;
+
+        StringSource(String input) {
+            this(input, input.length());
+        }
+
+        private StringSource(String input, int end) {
+            this.input = input;
+            this.end = end;
+        }
+
+        @Override
+        public char charAt(int offset) {
+            if (offset >= end) return '\0';
+            return input.charAt(offset);
+        }
+
+        @Override
+        public int length() {
+            return end;
+        }
+
+        @Override
+        public CharSource limit(int end) {
+            return new StringSource(input, Math.min(end, this.end));
+        }
+
+        @Override
+        public CharSource edit(int offset, int removedLength, String inserted) {
+            if (offset < 0 || removedLength < 0 || offset + removedLength > end) {
+                throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removedLength)
+                        + ") outside of input of length " + end);
+            }
+            return new StringSource(input.substring(0, offset) + inserted + input.substring(offset + removedLength, end));
+        }
+
+        @Override
+        public String text(int start, int end) {
+            return input.substring(start, end);
+        }
+    }
+
+    //Держит в памяти только окно buf: символы до release() сдвигаются к началу при подкачке.
+    //Буфер растёт лишь тогда, когда одна лексема длиннее буфера.
+    static final class ReaderSource extends CharSource {
+        private final Reader reader;
+        private char[] buf;
+        private int base = 0;   // абсолютное смещение buf[0]
+        private int limit = 0;  // число прочитанных символов в buf
+        private int keep = 0;   // символы начиная с этого смещения ещё нужны
+        private boolean eof = false;
+
+        ReaderSource(Reader reader, int bufferSize) {
+            if (bufferSize < 4) {
+                throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+            }
+            this.reader = reader;
+            this.buf = new char[bufferSize];
+        }
+
+        @Override
+        public char charAt(int offset) {
+            int i = offset - base;
+            if (i < limit) return buf[i];
+            if (!fill(offset)) return '\0';
+            return buf[offset - base];
+        }
+
+        @Override
+        public String text(int start, int end) {
+            return new String(buf, start - base, end - start);
+        }
+
+        @Override
+        public void release(int offset) {
+            keep = offset;
+        }
+
+        @Override
+        public boolean retainsText() {
+            return false;
+        }
+
+        //Подкачивает символы, пока не станет доступно смещение offset. Возвращает false в конце входа.
+        private boolean fill(int offset) {
+            while (offset - base >= limit) {
+                if (eof) return false;
+                int drop = Math.min(keep - base, limit);
+                if (drop > 0) {
+                    System.arraycopy(buf, drop, buf, 0, limit - drop);
+                    limit -= drop;
+                    base += drop;
+                }
+                if (limit == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int n;
+                try {
+                    n = reader.read(buf, limit, buf.length - limit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (n < 0) {
+                    eof = true;
+                    return false;
+                }
+                limit += n;
+            }
+            return true;
+        }
+    }
+
+    //Читает байты прямо из отображения. Язык использует только ASCII, поэтому байт и есть символ;
+    //многобайтные символы UTF-8 встречаются лишь в комментариях и декодируются только в text().
+    static final class MappedSource extends CharSource {
+        private final ByteBuffer bytes;
+        private final int limit;
+
+        MappedSource(ByteBuffer bytes) {
+            this(bytes, bytes.limit());
+        }
+
+        private MappedSource(ByteBuffer bytes, int limit) {
+            this.bytes = bytes;
+            this.limit = limit;
+        }
+
+        @Override
+        public int length() {
+            return limit;
+        }
+
+        @Override
+        public CharSource limit(int end) {
+            return new MappedSource(bytes, Math.min(end, limit));
+        }
+
+        @Override
+        public char charAt(int offset) {
+            if (offset >= limit) return '\0';
+            return (char) (bytes.get(offset) & 0xFF);
+        }
+
+        @Override
+        public String text(int start, int end) {
+            byte[] b = new byte[end - start];
+            bytes.get(start, b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isByteEncoded() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+//Минимальная запись class-файла для BytecodeCompiler: пул констант (повторы не добавляются) и методы
+//с готовым байт-кодом. Версия 49 (Java 5): такие классы проверяет верификатор с выводом типов,
+//так что StackMapTable не нужна. Полей, интерфейсов и атрибутов класса нет.
+public class ClassFileWriter {
+    private static final int VERSION = 49;
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    //Номер следующей записи пула (long и double занимают две)
+    private int poolSize = 1;
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+    private final int thisClass;
+    private final int superClass;
+
+    //name и superName — внутренние имена (через '/')
+    public ClassFileWriter(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    public int utf8(String text) {
+        Integer index = poolIndex.get("U" + text);
+        if (index != null) return index;
+        try {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return add("U" + text, 1);
+    }
+
+    public int classRef(String name) {
+        Integer index = poolIndex.get("C" + name);
+        if (index != null) return index;
+        int nameIndex = utf8(name);
+        write(CONSTANT_CLASS, nameIndex);
+        return add("C" + name, 1);
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        String key = "M" + owner + '.' + name + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        Integer nameAndType = poolIndex.get("N" + name + descriptor);
+        if (nameAndType == null) {
+            write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+            nameAndType = add("N" + name + descriptor, 1);
+        }
+        write(CONSTANT_METHODREF, ownerIndex, nameAndType);
+        return add(key, 1);
+    }
+
+    public int intConstant(int value) {
+        Integer index = poolIndex.get("I" + value);
+        if (index != null) return index;
+        try {
+            pool.writeByte(CONSTANT_INTEGER);
+            pool.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return add("I" + value, 1);
+    }
+
+    public int longConstant(long value) {
+        return wideConstant(CONSTANT_LONG, "J", value);
+    }
+
+    //Константа double по битам (так различаются -0.0 и разные NaN)
+    public int doubleConstant(long bits) {
+        return wideConstant(CONSTANT_DOUBLE, "D", bits);
+    }
+
+    public void addMethod(int access, String name, String descriptor, byte[] code, int maxStack, int maxLocals) {
+        if (code.length >= 65536) {
+            throw new IllegalStateException("Method " + name + " is too large: " + code.length + " bytes");
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        try {
+            methods.writeShort(access);
+            methods.writeShort(nameIndex);
+            methods.writeShort(descriptorIndex);
+            methods.writeShort(1);
+            methods.writeShort(codeAttribute);
+            methods.writeInt(12 + code.length);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(code.length);
+            methods.write(code);
+            methods.writeShort(0); // таблица исключений
+            methods.writeShort(0); // атрибуты Code
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // интерфейсы
+            out.writeShort(0); // поля
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // атрибуты класса
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int wideConstant(int tag, String prefix, long value) {
+        Integer index = poolIndex.get(prefix + value);
+        if (index != null) return index;
+        try {
+            pool.writeByte(tag);
+            pool.writeLong(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return add(prefix + value, 2);
+    }
+
+    private void write(int tag, int... indexes) {
+        try {
+            pool.writeByte(tag);
+            for (int index : indexes) {
+                pool.writeShort(index);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int add(String key, int entries) {
+        if (poolSize + entries > 65535) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        int index = poolSize;
+        poolSize += entries;
+        poolIndex.put(key, index);
+        return index;
+    }
+}
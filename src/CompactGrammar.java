@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Грамматика в том виде, в котором её обрабатывает GrammarNormalizer: символы — плотные номера в общей
+//таблице Symbols (ε — всегда номер 0), левые части — массив номеров, правые части всех правил подряд
+//в одном int[] со смещением начала каждого правила. Повторное правило addRule не добавляет: номера правил
+//лежат в хеш-таблице с открытой адресацией, так что проверка не создаёт объектов.
+public class CompactGrammar {
+    public static final int EPSILON = 0;
+
+    //Имена символов и признаки терминала и нетерминала. Одна таблица на нормализацию: грамматики после
+    //каждого шага ссылаются на неё же, новые символы (S', T_x, X1) добавляются по ходу
+    public static class Symbols {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final BitSet terminals = new BitSet();
+        private final BitSet nonTerminals = new BitSet();
+
+        public Symbols() {
+            intern("ε");
+        }
+
+        public Symbols(Collection<String> nonTerminals, Collection<String> terminals) {
+            this(nonTerminals, terminals, List.of());
+        }
+
+        //Номера раздаются по первому появлению символа в rules, затем остальным символам множеств: порядок
+        //обхода Set (у Set.of он свой в каждом запуске JVM) на номера правил и имена X1, X2, … не влияет
+        public Symbols(Collection<String> nonTerminals, Collection<String> terminals, List<GrammarNormalizer.Rule> rules) {
+            this();
+            for (GrammarNormalizer.Rule rule : rules) {
+                intern(rule.left);
+                for (String name : rule.right) {
+                    intern(name);
+                }
+            }
+            for (String name : nonTerminals) {
+                this.nonTerminals.set(intern(name));
+            }
+            for (String name : terminals) {
+                this.terminals.set(intern(name));
+            }
+        }
+
+        public int intern(String name) {
+            Integer id = ids.get(name);
+            if (id != null) return id;
+            ids.put(name, names.size());
+            names.add(name);
+            return names.size() - 1;
+        }
+
+        //Номер символа или -1, если такого нет
+        public int id(String name) {
+            Integer id = ids.get(name);
+            return id == null ? -1 : id;
+        }
+
+        public String name(int symbol) { return names.get(symbol); }
+
+        public int size() { return names.size(); }
+
+        public boolean isTerminal(int symbol) { return terminals.get(symbol); }
+
+        public boolean isNonTerminal(int symbol) { return nonTerminals.get(symbol); }
+
+        public void addNonTerminal(int symbol) { nonTerminals.set(symbol); }
+
+        //Множества — сами битовые наборы таблицы, не копии
+        public BitSet getTerminals() { return terminals; }
+
+        public BitSet getNonTerminals() { return nonTerminals; }
+    }
+
+    private final Symbols symbols;
+    private int[] lefts = new int[16];
+    //Правая часть правила r — right[starts[r]] … right[starts[r + 1] - 1]
+    private int[] starts = new int[17];
+    private int[] right = new int[64];
+    private int ruleCount = 0;
+    //Номер правила + 1, 0 — свободная ячейка; длина — степень двойки
+    private int[] index = new int[32];
+
+    public CompactGrammar(Symbols symbols) {
+        this.symbols = symbols;
+    }
+
+    //Правила из списка; символы, которых нет в таблице, добавляются без признаков
+    public static CompactGrammar of(Symbols symbols, List<GrammarNormalizer.Rule> rules) {
+        CompactGrammar grammar = new CompactGrammar(symbols);
+        int[] buffer = new int[8];
+        for (GrammarNormalizer.Rule rule : rules) {
+            if (buffer.length < rule.right.size()) buffer = new int[rule.right.size() * 2];
+            for (int i = 0; i < rule.right.size(); i++) {
+                buffer[i] = symbols.intern(rule.right.get(i));
+            }
+            grammar.addRule(symbols.intern(rule.left), buffer, 0, rule.right.size());
+        }
+        return grammar;
+    }
+
+    public List<GrammarNormalizer.Rule> toRules() {
+        List<GrammarNormalizer.Rule> rules = new ArrayList<>(ruleCount);
+        for (int r = 0; r < ruleCount; r++) {
+            List<String> names = new ArrayList<>(length(r));
+            for (int i = starts[r]; i < starts[r + 1]; i++) {
+                names.add(symbols.name(right[i]));
+            }
+            rules.add(new GrammarNormalizer.Rule(symbols.name(lefts[r]), names));
+        }
+        return rules;
+    }
+
+    public Symbols getSymbols() { return symbols; }
+
+    public int ruleCount() { return ruleCount; }
+
+    public int left(int rule) { return lefts[rule]; }
+
+    public int length(int rule) { return starts[rule + 1] - starts[rule]; }
+
+    public int symbol(int rule, int position) { return right[starts[rule] + position]; }
+
+    //Общее число символов в правых частях
+    public int size() { return starts[ruleCount]; }
+
+    public boolean contains(int rule, int symbol) {
+        for (int i = starts[rule]; i < starts[rule + 1]; i++) {
+            if (right[i] == symbol) return true;
+        }
+        return false;
+    }
+
+    //Правило целиком из ε: A → ε
+    public boolean isEpsilon(int rule) {
+        return length(rule) == 1 && symbol(rule, 0) == EPSILON;
+    }
+
+    //Правило left → symbols[from … to); false, если такое уже есть
+    public boolean addRule(int left, int[] symbols, int from, int to) {
+        int hash = hash(left, symbols, from, to);
+        int mask = index.length - 1;
+        for (int slot = hash & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            if (equalsRule(index[slot] - 1, left, symbols, from, to)) return false;
+        }
+        int length = to - from;
+        if (ruleCount + 1 == lefts.length) {
+            lefts = Arrays.copyOf(lefts, lefts.length * 2);
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        int start = starts[ruleCount];
+        if (start + length > right.length) right = Arrays.copyOf(right, Math.max(right.length * 2, start + length));
+        System.arraycopy(symbols, from, right, start, length);
+        lefts[ruleCount] = left;
+        starts[ruleCount + 1] = start + length;
+        ruleCount++;
+        if (ruleCount * 2 > index.length) {
+            rehash();
+        } else {
+            insert(ruleCount - 1, hash);
+        }
+        return true;
+    }
+
+    //Копирует правило rule другой грамматики с той же таблицей символов, подставив левую часть left
+    public boolean addRule(int left, CompactGrammar from, int rule) {
+        return addRule(left, from.right, from.starts[rule], from.starts[rule + 1]);
+    }
+
+    //Правила каждого символа левой части: номера правил по порядку в rules[offsets[s] … offsets[s + 1])
+    public int[][] rulesByLeft() {
+        int[] offsets = new int[symbols.size() + 1];
+        for (int r = 0; r < ruleCount; r++) {
+            offsets[lefts[r] + 1]++;
+        }
+        for (int s = 0; s < symbols.size(); s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        int[] rules = new int[ruleCount];
+        int[] next = Arrays.copyOf(offsets, symbols.size());
+        for (int r = 0; r < ruleCount; r++) {
+            rules[next[lefts[r]]++] = r;
+        }
+        return new int[][]{offsets, rules};
+    }
+
+    private boolean equalsRule(int rule, int left, int[] symbols, int from, int to) {
+        if (lefts[rule] != left || length(rule) != to - from) return false;
+        for (int i = starts[rule], j = from; j < to; i++, j++) {
+            if (right[i] != symbols[j]) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        index = new int[index.length * 2];
+        for (int r = 0; r < ruleCount; r++) {
+            insert(r, hash(lefts[r], right, starts[r], starts[r + 1]));
+        }
+    }
+
+    private void insert(int rule, int hash) {
+        int mask = index.length - 1;
+        int slot = hash & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = rule + 1;
+    }
+
+    //Шаги MurmurHash3 по символам правила: у полинома с основанием 31 тройки номеров из широкого диапазона
+    //(A → B C при тысячах нетерминалов) совпадают по значению, и линейное пробирование вырождается в перебор
+    private static int hash(int left, int[] symbols, int from, int to) {
+        int hash = mix(0, left);
+        for (int i = from; i < to; i++) {
+            hash = mix(hash, symbols[i]);
+        }
+        hash ^= to - from;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int mix(int hash, int value) {
+        hash ^= Integer.rotateLeft(value * 0xcc9e2d51, 15) * 0x1b873593;
+        return Integer.rotateLeft(hash, 13) * 5 + 0xe6546b64;
+    }
+}
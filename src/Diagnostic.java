@@ -0,0 +1,40 @@
+//Сообщение о проблеме во входе: вид, позиция начала (смещение, строка, колонка) и текст
+public class Diagnostic {
+    public enum Kind {
+        INVALID_DIGIT,         // цифра, недопустимая в основании литерала (например, 9 в 101b)
+        NUMBER_OVERFLOW,       // значение литерала не помещается в long / double
+        MALFORMED_NUMBER,      // неверный порядок вещественного числа (1e, 2.5e+, 1e5.3)
+        UNKNOWN_CHARACTER,     // символ, с которого не начинается ни одна лексема
+        UNKNOWN_OPERATOR,      // последовательность символов операторов, не образующая оператор
+        UNTERMINATED_COMMENT,  // комментарий { без закрывающей } (позиция — начало комментария)
+        SYNTAX_ERROR,          // синтаксическая ошибка, найденная Parser в режиме восстановления
+        UNDECLARED_VARIABLE,   // переменная не описана (SemanticChecker)
+        DUPLICATE_DECLARATION, // переменная описана повторно
+        TYPE_MISMATCH          // несовместимые типы в присваивании, условии, цикле или операции
+    }
+
+    private final Kind kind;
+    private final int offset;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    public Diagnostic(Kind kind, int offset, int line, int column, String message) {
+        this.kind = kind;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public Kind getKind() { return kind; }
+    public int getOffset() { return offset; }
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        return String.format("%d:%d: %s: %s", line, column, kind, message);
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Накопитель диагностик в порядке их появления во входе
+public class Diagnostics {
+    private final List<Diagnostic> items = new ArrayList<>();
+
+    public void report(Diagnostic.Kind kind, int offset, int line, int column, String message) {
+        items.add(new Diagnostic(kind, offset, line, column, message));
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public Diagnostic get(int index) {
+        return items.get(index);
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(items);
+    }
+
+    //Добавляет диагностики участка, сдвигая их строки на lineDelta (см. ParallelLexer)
+    void addAll(Diagnostics part, int lineDelta) {
+        for (Diagnostic d : part.items) {
+            items.add(lineDelta == 0 ? d
+                    : new Diagnostic(d.getKind(), d.getOffset(), d.getLine() + lineDelta, d.getColumn(), d.getMessage()));
+        }
+    }
+
+    void clear() {
+        items.clear();
+    }
+
+    //Удаляет последние диагностики со смещением не меньше offset
+    void removeFrom(int offset) {
+        int size = items.size();
+        while (size > 0 && items.get(size - 1).getOffset() >= offset) size--;
+        items.subList(size, items.size()).clear();
+    }
+
+    //Правка текста (см. Lexer.edit): диагностики со смещением в [from, to) заменяются диагностиками
+    //replacement, а стоящие дальше сдвигаются так же, как лексемы в LexemeTable.splice().
+    void splice(int from, int to, Diagnostics replacement,
+                int offsetDelta, int lineDelta, int columnLine, int columnDelta) {
+        List<Diagnostic> result = new ArrayList<>(items.size() + replacement.size());
+        for (Diagnostic d : items) {
+            if (d.getOffset() < from) result.add(d);
+        }
+        result.addAll(replacement.items);
+        for (Diagnostic d : items) {
+            if (d.getOffset() < to) continue;
+            int column = d.getLine() == columnLine ? d.getColumn() + columnDelta : d.getColumn();
+            result.add(new Diagnostic(d.getKind(), d.getOffset() + offsetDelta, d.getLine() + lineDelta, column,
+                    d.getMessage()));
+        }
+        items.clear();
+        items.addAll(result);
+    }
+
+    public void print() {
+        System.out.println("Диагностика:");
+        for (Diagnostic d : items) {
+            System.out.println(d);
+        }
+    }
+}
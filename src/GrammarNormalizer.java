@@ -1,6 +1,9 @@
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.IntPredicate;
 
+//Приведение грамматики к нормальной форме Хомского. Все шаги работают над CompactGrammar (символы —
+//номера, правые части — общий int[], множества символов — BitSet); Rule со строками остаются только
+//на входе и выходе normalize и у обёрток шагов над списками правил.
 public class GrammarNormalizer {
 
     static class Rule {
@@ -36,26 +39,76 @@ public class GrammarNormalizer {
         }
     }
 
-    private static int helperCounter = 0;
-    private static final Map<List<String>, String> helperMap = new HashMap<>();
+    //Порядок шагов нормализации. DEL_BEFORE_BIN — прежний: ε-правила удаляются до разбиения правых частей
+    //на пары, и правило с k порождающими ε символами даёт до 2^k вариантов. BIN_BEFORE_DEL сначала
+    //разбивает длинные правые части (шаг BIN из convertToCNF), и у каждого правила остаётся не больше трёх
+    //вариантов — грамматика растёт полиномиально и всё так же приходит к нормальной форме Хомского
+    public enum Order {
+        DEL_BEFORE_BIN,
+        BIN_BEFORE_DEL
+    }
 
     public static List<Rule> normalize(String startSymbol,
                                        Set<String> nonTerminals,
                                        Set<String> terminals,
                                        List<Rule> rules) {
+        return new Session().normalize(startSymbol, nonTerminals, terminals, rules);
+    }
+
+    public static List<Rule> normalize(String startSymbol,
+                                       Set<String> nonTerminals,
+                                       Set<String> terminals,
+                                       List<Rule> rules,
+                                       Order order) {
+        return new Session().normalize(startSymbol, nonTerminals, terminals, rules, order);
+    }
 
-        if (!languageExists(startSymbol, nonTerminals, terminals, rules)) {
-            System.out.println("Язык не содержит конечных слов. Разбор невозможен.");
-            return Collections.emptyList();
+    //Сеанс нормализации со своей нумерацией вспомогательных нетерминалов X1, X2, … Статический normalize
+    //заводит новый сеанс на каждый вызов: имена не зависят от того, что нормализовалось раньше, память
+    //освобождается вместе с результатом, одновременные вызовы из разных потоков ничего не делят.
+    //Один сеанс на несколько грамматик даёт одной паре символов одно имя во всех них; сам сеанс
+    //не потокобезопасен — по одному на поток или задачу
+    public static class Session {
+        private int helperCounter = 0;
+        private final Map<List<String>, String> helperMap = new HashMap<>();
+
+        public List<Rule> normalize(String startSymbol,
+                                    Set<String> nonTerminals,
+                                    Set<String> terminals,
+                                    List<Rule> rules) {
+            return normalize(startSymbol, nonTerminals, terminals, rules, Order.DEL_BEFORE_BIN);
         }
 
-        rules = removeNonProductiveSymbols(nonTerminals, terminals, rules);
-        rules = removeUnreachableSymbols(startSymbol, nonTerminals, terminals, rules);
-        rules = removeEpsilonRules(nonTerminals, terminals, rules, startSymbol);
-        rules = removeChainRules(nonTerminals, rules);
-        rules = convertToCNF(new HashSet<>(nonTerminals), new HashSet<>(terminals), rules);
+        public List<Rule> normalize(String startSymbol,
+                                    Set<String> nonTerminals,
+                                    Set<String> terminals,
+                                    List<Rule> rules,
+                                    Order order) {
+            CompactGrammar.Symbols symbols = new CompactGrammar.Symbols(nonTerminals, terminals, rules);
+            CompactGrammar grammar = CompactGrammar.of(symbols, rules);
+            int start = symbols.intern(startSymbol);
+
+            if (!languageExists(grammar, start)) {
+                System.out.println("Язык не содержит конечных слов. Разбор невозможен.");
+                return Collections.emptyList();
+            }
+
+            grammar = removeNonProductiveSymbols(grammar);
+            grammar = removeUnreachableSymbols(grammar, start);
+            if (order == Order.BIN_BEFORE_DEL) grammar = binarize(grammar, this);
+            int added = symbols.size();
+            grammar = removeEpsilonRules(grammar, start);
+            exportNonTerminals(symbols, nonTerminals, added); // новый начальный символ S', как и раньше
+            grammar = removeChainRules(grammar);
+            grammar = convertToCNF(grammar, this);
+
+            return grammar.toRules();
+        }
 
-        return new ArrayList<>(new LinkedHashSet<>(rules));
+        //Имя вспомогательного нетерминала пары символов
+        String helperName(String first, String second) {
+            return helperMap.computeIfAbsent(List.of(first, second), k -> "X" + (++helperCounter));
+        }
     }
 
     public static void printRules(List<Rule> rules, Set<String> terminals) {
@@ -73,201 +126,451 @@ public class GrammarNormalizer {
         }
     }
 
+    //Шаги над списками правил: перевод в CompactGrammar и обратно (повторы правил в ответе не остаются)
+
     static boolean languageExists(String start, Set<String> nonTerminals, Set<String> terminals, List<Rule> rules) {
-        Set<String> N = new HashSet<>();
-        boolean changed;
-        do {
-            changed = false;
-            for (Rule rule : rules) {
-                if (!N.contains(rule.left)) {
-                    boolean allInNOrTerm = rule.right.stream().allMatch(sym ->
-                            terminals.contains(sym) || N.contains(sym) || sym.equals("ε"));
-                    if (allInNOrTerm) {
-                        N.add(rule.left);
-                        changed = true;
-                    }
-                }
-            }
-        } while (changed);
-        return N.contains(start);
+        CompactGrammar grammar = CompactGrammar.of(new CompactGrammar.Symbols(nonTerminals, terminals, rules), rules);
+        return languageExists(grammar, grammar.getSymbols().intern(start));
     }
 
     static List<Rule> removeNonProductiveSymbols(Set<String> nonTerminals, Set<String> terminals, List<Rule> rules) {
-        Set<String> productive = new HashSet<>();
-        boolean changed;
-        do {
-            changed = false;
-            for (Rule rule : rules) {
-                if (!productive.contains(rule.left)) {
-                    if (rule.right.contains("ε") || rule.right.stream().allMatch(sym ->
-                            terminals.contains(sym) || productive.contains(sym))) {
-                        productive.add(rule.left);
-                        changed = true;
-                    }
-                }
-            }
-        } while (changed);
-        return rules.stream()
-                .filter(rule -> productive.contains(rule.left)
-                        && rule.right.stream().allMatch(sym ->
-                        terminals.contains(sym) || productive.contains(sym) || sym.equals("ε")))
-                .collect(Collectors.toList());
+        CompactGrammar grammar = CompactGrammar.of(new CompactGrammar.Symbols(nonTerminals, terminals, rules), rules);
+        return removeNonProductiveSymbols(grammar).toRules();
     }
 
     static List<Rule> removeUnreachableSymbols(String startSymbol, Set<String> nonTerminals, Set<String> terminals, List<Rule> rules) {
-        Set<String> reachable = new HashSet<>();
-        reachable.add(startSymbol);
-        boolean changed;
-        do {
-            changed = false;
-            for (Rule rule : rules) {
-                if (reachable.contains(rule.left)) {
-                    for (String sym : rule.right) {
-                        if ((nonTerminals.contains(sym) || terminals.contains(sym)) && reachable.add(sym)) {
-                            changed = true;
-                        }
+        CompactGrammar grammar = CompactGrammar.of(new CompactGrammar.Symbols(nonTerminals, terminals, rules), rules);
+        return removeUnreachableSymbols(grammar, grammar.getSymbols().intern(startSymbol)).toRules();
+    }
+
+    static List<Rule> removeEpsilonRules(Set<String> nonTerminals, Set<String> terminals, List<Rule> rules, String startSymbol) {
+        CompactGrammar grammar = CompactGrammar.of(new CompactGrammar.Symbols(nonTerminals, terminals, rules), rules);
+        grammar = removeEpsilonRules(grammar, grammar.getSymbols().intern(startSymbol));
+        exportNonTerminals(grammar.getSymbols(), nonTerminals);
+        return grammar.toRules();
+    }
+
+    static List<Rule> removeChainRules(Set<String> nonTerminals, List<Rule> rules) {
+        CompactGrammar grammar = CompactGrammar.of(new CompactGrammar.Symbols(nonTerminals, Set.of(), rules), rules);
+        return removeChainRules(grammar).toRules();
+    }
+
+    static List<Rule> convertToCNF(Set<String> nonTerminals, Set<String> terminals, List<Rule> rules) {
+        CompactGrammar grammar = CompactGrammar.of(new CompactGrammar.Symbols(nonTerminals, terminals, rules), rules);
+        grammar = convertToCNF(grammar, new Session());
+        exportNonTerminals(grammar.getSymbols(), nonTerminals);
+        return grammar.toRules();
+    }
+
+    //Добавляет в nonTerminals нетерминалы, появившиеся в таблице символов по ходу шагов
+    private static void exportNonTerminals(CompactGrammar.Symbols symbols, Set<String> nonTerminals) {
+        exportNonTerminals(symbols, nonTerminals, 0);
+    }
+
+    //То же для символов с номерами от from: вспомогательные X при BIN_BEFORE_DEL наружу не попадают
+    private static void exportNonTerminals(CompactGrammar.Symbols symbols, Set<String> nonTerminals, int from) {
+        BitSet added = symbols.getNonTerminals();
+        for (int symbol = added.nextSetBit(from); symbol >= 0; symbol = added.nextSetBit(symbol + 1)) {
+            if (!nonTerminals.contains(symbols.name(symbol))) nonTerminals.add(symbols.name(symbol));
+        }
+    }
+
+    //Шаги над CompactGrammar
+
+    static boolean languageExists(CompactGrammar grammar, int start) {
+        BitSet ready = (BitSet) grammar.getSymbols().getTerminals().clone();
+        ready.set(CompactGrammar.EPSILON);
+        return derivable(grammar, ready, rule -> false).get(start);
+    }
+
+    static CompactGrammar removeNonProductiveSymbols(CompactGrammar grammar) {
+        BitSet terminals = grammar.getSymbols().getTerminals();
+        BitSet productive = derivable(grammar, terminals, rule -> grammar.contains(rule, CompactGrammar.EPSILON));
+        BitSet allowed = (BitSet) productive.clone();
+        allowed.or(terminals);
+        allowed.set(CompactGrammar.EPSILON);
+        return filter(grammar, productive, allowed);
+    }
+
+    static CompactGrammar removeUnreachableSymbols(CompactGrammar grammar, int start) {
+        CompactGrammar.Symbols symbols = grammar.getSymbols();
+        int[][] byLeft = grammar.rulesByLeft();
+        int[] offsets = byLeft[0];
+        int[] rules = byLeft[1];
+        BitSet reachable = new BitSet();
+        reachable.set(start);
+        int[] queue = new int[symbols.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int symbol = queue[head++];
+            for (int k = offsets[symbol]; k < offsets[symbol + 1]; k++) {
+                int rule = rules[k];
+                for (int i = 0; i < grammar.length(rule); i++) {
+                    int sym = grammar.symbol(rule, i);
+                    if ((symbols.isNonTerminal(sym) || symbols.isTerminal(sym)) && !reachable.get(sym)) {
+                        reachable.set(sym);
+                        queue[tail++] = sym;
                     }
                 }
             }
-        } while (changed);
-        return rules.stream()
-                .filter(rule -> reachable.contains(rule.left)
-                        && rule.right.stream().allMatch(sym -> reachable.contains(sym) || sym.equals("ε")))
-                .collect(Collectors.toList());
+        }
+        BitSet allowed = (BitSet) reachable.clone();
+        allowed.set(CompactGrammar.EPSILON);
+        return filter(grammar, reachable, allowed);
     }
 
-    static List<Rule> removeEpsilonRules(Set<String> nonTerminals, Set<String> terminals, List<Rule> rules, String startSymbol) {
-        Set<String> nullable = new HashSet<>();
-        boolean changed;
-        do {
-            changed = false;
-            for (Rule rule : rules) {
-                if (!nullable.contains(rule.left)) {
-                    if (rule.right.size() == 1 && rule.right.get(0).equals("ε")) {
-                        nullable.add(rule.left);
-                        changed = true;
-                    } else if (rule.right.stream().allMatch(nullable::contains)) {
-                        nullable.add(rule.left);
-                        changed = true;
-                    }
+    //Правила с левой частью из lefts, все символы правой части которых входят в allowed
+    private static CompactGrammar filter(CompactGrammar grammar, BitSet lefts, BitSet allowed) {
+        CompactGrammar result = new CompactGrammar(grammar.getSymbols());
+        for (int rule = 0; rule < grammar.ruleCount(); rule++) {
+            if (!lefts.get(grammar.left(rule))) continue;
+            boolean kept = true;
+            for (int i = 0; i < grammar.length(rule) && kept; i++) {
+                kept = allowed.get(grammar.symbol(rule, i));
+            }
+            if (kept) result.addRule(grammar.left(rule), grammar, rule);
+        }
+        return result;
+    }
+
+    //Левые части правил, выводимых до конца: правило готово, если для него выполнено seed или каждый
+    //символ правой части готов сам (ready) или уже найден как левая часть готового правила.
+    //У каждого правила — счётчик неготовых вхождений, у символа — список правил, где он встречается,
+    //так что каждое вхождение просматривается один раз и время линейно по размеру грамматики.
+    private static BitSet derivable(CompactGrammar grammar, BitSet ready, IntPredicate seed) {
+        int ruleCount = grammar.ruleCount();
+        int symbolCount = grammar.getSymbols().size();
+        int[] pending = new int[ruleCount];
+        int[] offsets = new int[symbolCount + 1];
+        boolean[] seeded = new boolean[ruleCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            seeded[rule] = seed.test(rule);
+            if (seeded[rule]) continue;
+            for (int i = 0; i < grammar.length(rule); i++) {
+                int symbol = grammar.symbol(rule, i);
+                if (!ready.get(symbol)) {
+                    pending[rule]++;
+                    offsets[symbol + 1]++;
                 }
             }
-        } while (changed);
-
-        List<Rule> noEpsilonRules = rules.stream()
-                .filter(rule -> !(rule.right.size() == 1 && rule.right.get(0).equals("ε")))
-                .collect(Collectors.toList());
-
-        Set<Rule> updatedRules = new HashSet<>(noEpsilonRules);
-        for (Rule rule : noEpsilonRules) {
-            List<String> right = rule.right;
-            List<Integer> nullableIndices = new ArrayList<>();
-            for (int i = 0; i < right.size(); i++) {
-                if (nullable.contains(right.get(i))) {
-                    nullableIndices.add(i);
+        }
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            offsets[symbol + 1] += offsets[symbol];
+        }
+        int[] occurrences = new int[offsets[symbolCount]];
+        int[] next = Arrays.copyOf(offsets, symbolCount);
+        for (int rule = 0; rule < ruleCount; rule++) {
+            if (seeded[rule]) continue;
+            for (int i = 0; i < grammar.length(rule); i++) {
+                int symbol = grammar.symbol(rule, i);
+                if (!ready.get(symbol)) occurrences[next[symbol]++] = rule;
+            }
+        }
+        BitSet found = new BitSet(symbolCount);
+        int[] queue = new int[symbolCount];
+        int head = 0;
+        int tail = 0;
+        for (int rule = 0; rule < ruleCount; rule++) {
+            int left = grammar.left(rule);
+            if (pending[rule] == 0 && !found.get(left)) {
+                found.set(left);
+                queue[tail++] = left;
+            }
+        }
+        while (head < tail) {
+            int symbol = queue[head++];
+            for (int k = offsets[symbol]; k < offsets[symbol + 1]; k++) {
+                int rule = occurrences[k];
+                int left = grammar.left(rule);
+                if (--pending[rule] == 0 && !found.get(left)) {
+                    found.set(left);
+                    queue[tail++] = left;
                 }
             }
-            int combinations = 1 << nullableIndices.size();
-            for (int i = 1; i < combinations; i++) {
-                List<String> newRight = new ArrayList<>(right);
-                for (int j = 0; j < nullableIndices.size(); j++) {
-                    if ((i & (1 << j)) != 0) {
-                        newRight.set(nullableIndices.get(j), null);
+        }
+        return found;
+    }
+
+    static CompactGrammar removeEpsilonRules(CompactGrammar grammar, int start) {
+        CompactGrammar.Symbols symbols = grammar.getSymbols();
+        BitSet nullable = derivable(grammar, new BitSet(), grammar::isEpsilon);
+
+        CompactGrammar result = new CompactGrammar(symbols);
+        int[] positions = new int[8];
+        int[] buffer = new int[8];
+        for (int rule = 0; rule < grammar.ruleCount(); rule++) {
+            if (grammar.isEpsilon(rule)) continue;
+            int length = grammar.length(rule);
+            if (buffer.length < length) {
+                buffer = new int[length];
+                positions = new int[length];
+            }
+            result.addRule(grammar.left(rule), grammar, rule);
+            int nullableCount = 0;
+            for (int i = 0; i < length; i++) {
+                if (nullable.get(grammar.symbol(rule, i))) positions[nullableCount++] = i;
+            }
+            int combinations = 1 << nullableCount;
+            for (int mask = 1; mask < combinations; mask++) {
+                int size = 0;
+                for (int i = 0, j = 0; i < length; i++) {
+                    if (j < nullableCount && positions[j] == i) {
+                        if ((mask & (1 << j++)) != 0) continue;
                     }
+                    buffer[size++] = grammar.symbol(rule, i);
                 }
-                List<String> filtered = newRight.stream().filter(Objects::nonNull).collect(Collectors.toList());
-                if (!filtered.isEmpty()) {
-                    updatedRules.add(new Rule(rule.left, filtered));
-                }
+                if (size > 0) result.addRule(grammar.left(rule), buffer, 0, size);
             }
         }
 
-        List<Rule> finalRules = new ArrayList<>(updatedRules);
-        if (nullable.contains(startSymbol)) {
-            String newStart = startSymbol + "'";
-            finalRules.add(new Rule(newStart, List.of(startSymbol)));
-            finalRules.add(new Rule(newStart, List.of("ε")));
-            nonTerminals.add(newStart);
+        if (nullable.get(start)) {
+            int newStart = symbols.intern(symbols.name(start) + "'");
+            result.addRule(newStart, new int[]{start}, 0, 1);
+            result.addRule(newStart, new int[]{CompactGrammar.EPSILON}, 0, 1);
+            symbols.addNonTerminal(newStart);
         }
 
-        return finalRules;
+        return result;
     }
 
-    static List<Rule> removeChainRules(Set<String> nonTerminals, List<Rule> rules) {
-        Map<String, Set<String>> chainMap = new HashMap<>();
-        for (String A : nonTerminals) {
-            Set<String> reachable = new HashSet<>();
-            reachable.add(A);
-            boolean changed;
-            do {
-                changed = false;
-                for (Rule rule : rules) {
-                    if (reachable.contains(rule.left) &&
-                            rule.right.size() == 1 &&
-                            nonTerminals.contains(rule.right.get(0))) {
-                        String B = rule.right.get(0);
-                        if (reachable.add(B)) changed = true;
+    //Цепные пары считаются один раз: граф цепных правил A → B сжимается по компонентам сильной связности,
+    //битовые множества достижимых компонент собираются от компонент-стоков к истокам, и каждому
+    //нетерминалу A достаются нецепные правила всех достижимых B — прямо по индексу правил по левой части
+    static CompactGrammar removeChainRules(CompactGrammar grammar) {
+        CompactGrammar.Symbols symbols = grammar.getSymbols();
+        BitSet nonTerminals = symbols.getNonTerminals();
+        int symbolCount = symbols.size();
+        //Цепные правила — рёбра графа, остальные — правила для копирования; те и другие по левой части
+        int[] unitOffsets = new int[symbolCount + 1];
+        int[] offsets = new int[symbolCount + 1];
+        for (int rule = 0; rule < grammar.ruleCount(); rule++) {
+            if (isUnit(grammar, rule, nonTerminals)) unitOffsets[grammar.left(rule) + 1]++;
+            else offsets[grammar.left(rule) + 1]++;
+        }
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            unitOffsets[symbol + 1] += unitOffsets[symbol];
+            offsets[symbol + 1] += offsets[symbol];
+        }
+        int[] unitTargets = new int[unitOffsets[symbolCount]];
+        int[] rules = new int[offsets[symbolCount]];
+        int[] nextUnit = Arrays.copyOf(unitOffsets, symbolCount);
+        int[] next = Arrays.copyOf(offsets, symbolCount);
+        for (int rule = 0; rule < grammar.ruleCount(); rule++) {
+            if (isUnit(grammar, rule, nonTerminals)) unitTargets[nextUnit[grammar.left(rule)]++] = grammar.symbol(rule, 0);
+            else rules[next[grammar.left(rule)]++] = rule;
+        }
+
+        int[] component = unitComponents(symbolCount, unitOffsets, unitTargets);
+        int componentCount = 0;
+        for (int c : component) {
+            componentCount = Math.max(componentCount, c + 1);
+        }
+        int[] memberOffsets = new int[componentCount + 1];
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            memberOffsets[component[symbol] + 1]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        int[] members = new int[symbolCount];
+        int[] nextMember = Arrays.copyOf(memberOffsets, componentCount);
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            members[nextMember[component[symbol]]++] = symbol;
+        }
+
+        //Достижимые компоненты — биты по номерам компонент, хранится только окно слов base[c] … base[c] +
+        //reachable[c].length - 1: компоненты нумеруются по завершении обхода, цепные правила ведут только
+        //в компоненты с меньшими номерами, и достижимые из одной компоненты обычно идут подряд
+        long[][] reachable = new long[componentCount][];
+        int[] base = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            int low = c >> 6;
+            int high = c >> 6;
+            for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+                int b = members[k];
+                for (int e = unitOffsets[b]; e < unitOffsets[b + 1]; e++) {
+                    int target = component[unitTargets[e]];
+                    if (target == c) continue;
+                    low = Math.min(low, base[target]);
+                    high = Math.max(high, base[target] + reachable[target].length - 1);
+                }
+            }
+            long[] words = new long[high - low + 1];
+            words[(c >> 6) - low] |= 1L << c;
+            for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+                int b = members[k];
+                for (int e = unitOffsets[b]; e < unitOffsets[b + 1]; e++) {
+                    int target = component[unitTargets[e]];
+                    if (target == c) continue;
+                    long[] from = reachable[target];
+                    int shift = base[target] - low;
+                    for (int i = 0; i < from.length; i++) {
+                        words[shift + i] |= from[i];
                     }
                 }
-            } while (changed);
-            chainMap.put(A, reachable);
+            }
+            reachable[c] = words;
+            base[c] = low;
         }
 
-        List<Rule> newRules = new ArrayList<>();
-        for (String A : nonTerminals) {
-            for (String B : chainMap.get(A)) {
-                for (Rule rule : rules) {
-                    if (rule.left.equals(B) &&
-                            !(rule.right.size() == 1 && nonTerminals.contains(rule.right.get(0)))) {
-                        newRules.add(new Rule(A, rule.right));
+        CompactGrammar result = new CompactGrammar(symbols);
+        for (int a = nonTerminals.nextSetBit(0); a >= 0; a = nonTerminals.nextSetBit(a + 1)) {
+            long[] words = reachable[component[a]];
+            int first = base[component[a]] << 6;
+            for (int i = 0; i < words.length; i++) {
+                for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+                    int c = first + (i << 6) + Long.numberOfTrailingZeros(bits);
+                    for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+                        int b = members[k];
+                        for (int r = offsets[b]; r < offsets[b + 1]; r++) {
+                            result.addRule(a, grammar, rules[r]);
+                        }
                     }
                 }
             }
         }
-        return newRules;
+        return result;
     }
 
-    static List<Rule> convertToCNF(Set<String> nonTerminals, Set<String> terminals, List<Rule> rules) {
-        List<Rule> cnfRules = new ArrayList<>();
-        Map<String, String> terminalToNonTerminal = new HashMap<>();
+    private static boolean isUnit(CompactGrammar grammar, int rule, BitSet nonTerminals) {
+        return grammar.length(rule) == 1 && nonTerminals.get(grammar.symbol(rule, 0));
+    }
 
-        for (Rule rule : rules) {
-            List<String> right = rule.right;
-            if (right.size() == 1) {
-                cnfRules.add(rule);
-            } else {
-                List<String> newRight = new ArrayList<>();
-                for (String sym : right) {
-                    if (terminals.contains(sym)) {
-                        terminalToNonTerminal.putIfAbsent(sym, "T_" + sym.toUpperCase());
-                        String nt = terminalToNonTerminal.get(sym);
-                        newRight.add(nt);
-                    } else {
-                        newRight.add(sym);
+    //Компоненты сильной связности графа со списками смежности targets[offsets[v] … offsets[v + 1]) —
+    //алгоритм Тарьяна с явным стеком вызовов. Номер компоненты вершины; компонента получает номер,
+    //когда её обход завершён, поэтому все её рёбра ведут в компоненты с меньшими номерами
+    private static int[] unitComponents(int vertexCount, int[] offsets, int[] targets) {
+        int[] order = new int[vertexCount]; // порядковый номер посещения + 1, 0 — не посещена
+        int[] low = new int[vertexCount];
+        int[] component = new int[vertexCount];
+        Arrays.fill(component, -1);
+        int[] stack = new int[vertexCount];
+        int[] calls = new int[vertexCount];
+        int[] edge = new int[vertexCount];
+        int stackTop = 0;
+        int counter = 0;
+        int components = 0;
+        for (int root = 0; root < vertexCount; root++) {
+            if (order[root] != 0) continue;
+            int callTop = 0;
+            order[root] = low[root] = ++counter;
+            stack[stackTop++] = root;
+            calls[callTop++] = root;
+            edge[root] = offsets[root];
+            while (callTop > 0) {
+                int v = calls[callTop - 1];
+                if (edge[v] < offsets[v + 1]) {
+                    int w = targets[edge[v]++];
+                    if (order[w] == 0) {
+                        order[w] = low[w] = ++counter;
+                        stack[stackTop++] = w;
+                        calls[callTop++] = w;
+                        edge[w] = offsets[w];
+                    } else if (component[w] == -1) {
+                        low[v] = Math.min(low[v], order[w]);
                     }
+                    continue;
                 }
-
-                for (Map.Entry<String, String> entry : terminalToNonTerminal.entrySet()) {
-                    Rule tRule = new Rule(entry.getValue(), List.of(entry.getKey()));
-                    if (!cnfRules.contains(tRule)) {
-                        cnfRules.add(tRule);
-                        nonTerminals.add(entry.getValue());
-                    }
+                callTop--;
+                if (low[v] == order[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackTop];
+                        component[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+                if (callTop > 0) {
+                    int parent = calls[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
                 }
+            }
+        }
+        return component;
+    }
 
-                String currentLeft = rule.left;
-                while (newRight.size() > 2) {
-                    List<String> pair = newRight.subList(0, 2);
-                    String newNonTerminal = helperMap.computeIfAbsent(new ArrayList<>(pair), k -> "X" + (++helperCounter));
-                    cnfRules.add(new Rule(newNonTerminal, new ArrayList<>(pair)));
-                    nonTerminals.add(newNonTerminal);
-                    newRight = new ArrayList<>(newRight.subList(1, newRight.size()));
-                    newRight.set(0, newNonTerminal);
+    static CompactGrammar convertToCNF(CompactGrammar grammar, Session session) {
+        CompactGrammar.Symbols symbols = grammar.getSymbols();
+        CompactGrammar cnfRules = new CompactGrammar(symbols);
+        //Нетерминал T_x терминала x + 1, 0 — ещё не заведён
+        int[] terminalToNonTerminal = new int[symbols.size()];
+        Map<Long, Integer> pairs = new HashMap<>();
+        int[] buffer = new int[8];
+
+        for (int rule = 0; rule < grammar.ruleCount(); rule++) {
+            int length = grammar.length(rule);
+            if (length == 1) {
+                cnfRules.addRule(grammar.left(rule), grammar, rule);
+                continue;
+            }
+            if (buffer.length < length) buffer = new int[length];
+            for (int i = 0; i < length; i++) {
+                int sym = grammar.symbol(rule, i);
+                if (symbols.isTerminal(sym)) {
+                    if (terminalToNonTerminal[sym] == 0) {
+                        int nt = symbols.intern("T_" + symbols.name(sym).toUpperCase());
+                        terminalToNonTerminal[sym] = nt + 1;
+                        symbols.addNonTerminal(nt);
+                        cnfRules.addRule(nt, new int[]{sym}, 0, 1);
+                    }
+                    buffer[i] = terminalToNonTerminal[sym] - 1;
+                } else {
+                    buffer[i] = sym;
                 }
-                cnfRules.add(new Rule(currentLeft, newRight));
             }
+
+            addBinarized(cnfRules, session, pairs, grammar.left(rule), buffer, length);
         }
 
         return cnfRules;
     }
+
+    //Шаг BIN отдельно от convertToCNF: правые части длиннее двух символов разбиваются на пары через
+    //вспомогательные нетерминалы, терминалы не заменяются, остальные правила переносятся как есть
+    static CompactGrammar binarize(CompactGrammar grammar, Session session) {
+        CompactGrammar result = new CompactGrammar(grammar.getSymbols());
+        Map<Long, Integer> pairs = new HashMap<>();
+        int[] buffer = new int[8];
+        for (int rule = 0; rule < grammar.ruleCount(); rule++) {
+            int length = grammar.length(rule);
+            if (length <= 2) {
+                result.addRule(grammar.left(rule), grammar, rule);
+                continue;
+            }
+            if (buffer.length < length) buffer = new int[length];
+            for (int i = 0; i < length; i++) {
+                buffer[i] = grammar.symbol(rule, i);
+            }
+            addBinarized(result, session, pairs, grammar.left(rule), buffer, length);
+        }
+        return result;
+    }
+
+    //left → buffer[0 … length) цепочкой пар: X1 → s0 s1, X2 → X1 s2, …, left → Xk s(length-1)
+    private static void addBinarized(CompactGrammar result, Session session, Map<Long, Integer> pairs,
+                                     int left, int[] buffer, int length) {
+        int from = 0;
+        while (length - from > 2) {
+            int newNonTerminal = helper(result.getSymbols(), session, pairs, buffer[from], buffer[from + 1]);
+            result.addRule(newNonTerminal, buffer, from, from + 2);
+            buffer[++from] = newNonTerminal;
+        }
+        result.addRule(left, buffer, from, length);
+    }
+
+    //Вспомогательный нетерминал пары: имена из сеанса, номера запоминаются в pairs, чтобы не собирать
+    //список имён на каждом шаге
+    private static int helper(CompactGrammar.Symbols symbols, Session session, Map<Long, Integer> pairs,
+                              int first, int second) {
+        long key = (long) first << 32 | second;
+        Integer helper = pairs.get(key);
+        if (helper == null) {
+            helper = symbols.intern(session.helperName(symbols.name(first), symbols.name(second)));
+            symbols.addNonTerminal(helper);
+            pairs.put(key, helper);
+        }
+        return helper;
+    }
 }
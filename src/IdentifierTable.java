@@ -1,35 +1,109 @@
 import java.util.*;
 
+//Таблица идентификаторов: открытая адресация по примитивным массивам.
+//Имя хешируется прямо по диапазону входа, строка создаётся только при первом появлении имени.
 public class IdentifierTable {
-    private final Map<String, Integer> table = new HashMap<>();
+    private int[] slots = new int[64];      // номер идентификатора или 0, если ячейка пуста
+    private int[] slotHashes = new int[64]; // хеш имени в ячейке
+    private String[] names = new String[16]; // names[id] — имя с номером id
     private int nextId = 1;
 
     public int add(String name) {
-        if (!table.containsKey(name)) {
-            table.put(name, nextId++);
+        return intern(CharSource.of(name), 0, name.length(), name.hashCode());
+    }
+
+    //Возвращает номер имени [start, start + length) источника, добавляя его при первом появлении.
+    //stringHash — хеш имени, посчитанный как String.hashCode(); лексер считает его при чтении слова.
+    public int intern(CharSource source, int start, int length, int stringHash) {
+        int hash = mix(stringHash);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int id = slots[i];
+            if (id == 0) {
+                return insert(i, hash, source.text(start, start + length));
+            }
+            if (slotHashes[i] == hash && sameName(names[id], source, start, length)) {
+                return id;
+            }
         }
-        return table.get(name);
     }
 
     public Integer getId(String name) {
-        return table.get(name);
+        int hash = mix(name.hashCode());
+        int mask = slots.length - 1;
+        for (int i = hash & mask; slots[i] != 0; i = (i + 1) & mask) {
+            if (slotHashes[i] == hash && names[slots[i]].equals(name)) {
+                return slots[i];
+            }
+        }
+        return null;
+    }
+
+    //Имя по номеру
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return nextId - 1;
     }
 
     public Set<String> getIdentifiers() {
-        return table.keySet();
+        return new LinkedHashSet<>(Arrays.asList(names).subList(1, nextId));
+    }
+
+    private int insert(int slot, int hash, String name) {
+        int id = nextId++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = name;
+        slots[slot] = id;
+        slotHashes[slot] = hash;
+        if (nextId * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int[] newHashes = new int[newSlots.length];
+        int mask = newSlots.length - 1;
+        for (int j = 0; j < slots.length; j++) {
+            if (slots[j] == 0) continue;
+            int i = slotHashes[j] & mask;
+            while (newSlots[i] != 0) i = (i + 1) & mask;
+            newSlots[i] = slots[j];
+            newHashes[i] = slotHashes[j];
+        }
+        slots = newSlots;
+        slotHashes = newHashes;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameName(String name, CharSource source, int start, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
     }
 
     public void print() {
         System.out.println("Идентификаторы:");
-        for (Map.Entry<String, Integer> entry : table.entrySet()) {
-            System.out.printf("%d\t%s\n", entry.getValue(), entry.getKey());
+        for (int id = 1; id < nextId; id++) {
+            System.out.printf("%d\t%s\n", id, names[id]);
         }
     }
     public void printTable() {
         System.out.println("Таблица идентификаторов:");
         System.out.printf("%-4s %-12s%n", "№", "Имя");
-        for (Map.Entry<String, Integer> entry : table.entrySet()) {
-            System.out.printf("%-4d %-12s%n", entry.getValue(), entry.getKey());
+        for (int id = 1; id < nextId; id++) {
+            System.out.printf("%-4d %-12s%n", id, names[id]);
         }
     }
 
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+//Исполнение IrProgram: один цикл выборки команд над массивами long — ячейками переменных и стеком значений,
+//так что проход цикла программы ничего не выделяет в куче. Ввод и вывод — через буферы ProgramIo.
+//Запуск: java Interpreter файл [--ir] [--compile] [--optimize[=проходы]] [--stats]
+//(--compile — выполнить байт-кодом JVM, см. BytecodeCompiler; проходы оптимизации — см. Optimizer)
+public class Interpreter {
+    private final IrProgram program;
+    private final long[] vars;
+    private final ProgramIo io;
+
+    public Interpreter(IrProgram program, InputStream in, OutputStream out) {
+        this.program = program;
+        this.vars = new long[program.slotCount()];
+        this.io = new ProgramIo(in, out);
+    }
+
+    //Выполняет программу до конца; ошибки выполнения — RuntimeException с номером строки
+    public void run() {
+        final int[] code = program.code;
+        final long[] constants = program.constants;
+        final long[] vars = this.vars;
+        final long[] stack = new long[program.maxStack];
+        int pc = 0;
+        int sp = 0;
+        try {
+            while (true) {
+                switch (code[pc++]) {
+                    case IrProgram.HALT:
+                        return;
+                    case IrProgram.PUSH:
+                        stack[sp++] = constants[code[pc++]];
+                        break;
+                    case IrProgram.LOAD:
+                        stack[sp++] = vars[code[pc++]];
+                        break;
+                    case IrProgram.STORE:
+                        vars[code[pc++]] = stack[--sp];
+                        break;
+                    case IrProgram.IADD:
+                        sp--;
+                        stack[sp - 1] += stack[sp];
+                        break;
+                    case IrProgram.ISUB:
+                        sp--;
+                        stack[sp - 1] -= stack[sp];
+                        break;
+                    case IrProgram.IMUL:
+                        sp--;
+                        stack[sp - 1] *= stack[sp];
+                        break;
+                    case IrProgram.IDIV:
+                        sp--;
+                        if (stack[sp] == 0) throw ProgramIo.divisionByZero(code[pc]);
+                        stack[sp - 1] /= stack[sp];
+                        pc++;
+                        break;
+                    case IrProgram.INEG:
+                        stack[sp - 1] = -stack[sp - 1];
+                        break;
+                    case IrProgram.FADD:
+                        sp--;
+                        stack[sp - 1] = bits(real(stack[sp - 1]) + real(stack[sp]));
+                        break;
+                    case IrProgram.FSUB:
+                        sp--;
+                        stack[sp - 1] = bits(real(stack[sp - 1]) - real(stack[sp]));
+                        break;
+                    case IrProgram.FMUL:
+                        sp--;
+                        stack[sp - 1] = bits(real(stack[sp - 1]) * real(stack[sp]));
+                        break;
+                    case IrProgram.FDIV:
+                        sp--;
+                        stack[sp - 1] = bits(real(stack[sp - 1]) / real(stack[sp]));
+                        break;
+                    case IrProgram.FNEG:
+                        stack[sp - 1] = bits(-real(stack[sp - 1]));
+                        break;
+                    case IrProgram.I2F:
+                        stack[sp - 1] = bits(stack[sp - 1]);
+                        break;
+                    case IrProgram.IEQ:
+                        sp--;
+                        stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+                        break;
+                    case IrProgram.INE:
+                        sp--;
+                        stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1 : 0;
+                        break;
+                    case IrProgram.ILT:
+                        sp--;
+                        stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                        break;
+                    case IrProgram.ILE:
+                        sp--;
+                        stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+                        break;
+                    case IrProgram.IGT:
+                        sp--;
+                        stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                        break;
+                    case IrProgram.IGE:
+                        sp--;
+                        stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+                        break;
+                    case IrProgram.FEQ:
+                        sp--;
+                        stack[sp - 1] = real(stack[sp - 1]) == real(stack[sp]) ? 1 : 0;
+                        break;
+                    case IrProgram.FNE:
+                        sp--;
+                        stack[sp - 1] = real(stack[sp - 1]) != real(stack[sp]) ? 1 : 0;
+                        break;
+                    case IrProgram.FLT:
+                        sp--;
+                        stack[sp - 1] = real(stack[sp - 1]) < real(stack[sp]) ? 1 : 0;
+                        break;
+                    case IrProgram.FLE:
+                        sp--;
+                        stack[sp - 1] = real(stack[sp - 1]) <= real(stack[sp]) ? 1 : 0;
+                        break;
+                    case IrProgram.FGT:
+                        sp--;
+                        stack[sp - 1] = real(stack[sp - 1]) > real(stack[sp]) ? 1 : 0;
+                        break;
+                    case IrProgram.FGE:
+                        sp--;
+                        stack[sp - 1] = real(stack[sp - 1]) >= real(stack[sp]) ? 1 : 0;
+                        break;
+                    case IrProgram.AND:
+                        sp--;
+                        stack[sp - 1] &= stack[sp];
+                        break;
+                    case IrProgram.OR:
+                        sp--;
+                        stack[sp - 1] |= stack[sp];
+                        break;
+                    case IrProgram.NOT:
+                        stack[sp - 1] ^= 1;
+                        break;
+                    case IrProgram.JUMP:
+                        pc = code[pc];
+                        break;
+                    case IrProgram.JUMP_IF_FALSE:
+                        pc = stack[--sp] == 0 ? code[pc] : pc + 1;
+                        break;
+                    case IrProgram.FOR_TEST:
+                        pc = vars[code[pc]] > vars[code[pc + 1]] ? code[pc + 2] : pc + 3;
+                        break;
+                    case IrProgram.INC:
+                        vars[code[pc++]]++;
+                        break;
+                    case IrProgram.READ_INT:
+                        vars[code[pc]] = io.readInt(code[pc + 1]);
+                        pc += 2;
+                        break;
+                    case IrProgram.READ_FLOAT:
+                        vars[code[pc]] = bits(io.readFloat(code[pc + 1]));
+                        pc += 2;
+                        break;
+                    case IrProgram.READ_BOOL:
+                        vars[code[pc]] = io.readBool(code[pc + 1]) ? 1 : 0;
+                        pc += 2;
+                        break;
+                    case IrProgram.WRITE_INT:
+                        io.writeInt(stack[--sp]);
+                        break;
+                    case IrProgram.WRITE_FLOAT:
+                        io.writeFloat(real(stack[--sp]));
+                        break;
+                    case IrProgram.WRITE_BOOL:
+                        io.writeBool(stack[--sp] != 0);
+                        break;
+                    case IrProgram.WRITE_LINE:
+                        io.writeLine();
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + code[pc - 1] + " at " + (pc - 1));
+                }
+            }
+        } finally {
+            io.flush();
+        }
+    }
+
+    //Значение переменной после run(): int и bool (0 или 1) как есть, float — биты double
+    public long value(int slot) {
+        return vars[slot];
+    }
+
+    public double floatValue(int slot) {
+        return real(vars[slot]);
+    }
+
+    private static double real(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Запуск: java Interpreter файл [--ir] [--compile] [--optimize[=проходы]] [--stats]");
+            return;
+        }
+        Lexer lexer = new Lexer(Files.readString(Path.of(args[0])));
+        lexer.tokenizeAll();
+        Parser parser = new Parser(lexer.getLexemeTable());
+        parser.parse();
+        SemanticChecker checker = new SemanticChecker(parser.getAst());
+        if (!checker.check()) {
+            checker.getDiagnostics().print();
+            return;
+        }
+        List<String> options = Arrays.asList(args);
+        IrProgram program = IrBuilder.build(parser.getAst(), checker);
+        for (String option : options) {
+            if (!option.equals("--optimize") && !option.startsWith("--optimize=")) continue;
+            Optimizer optimizer = new Optimizer(parser.getAst(), checker, Optimizer.parsePasses(
+                    option.contains("=") ? option.substring(option.indexOf('=') + 1) : "all")).run();
+            IrProgram optimized = IrBuilder.build(parser.getAst(), checker, optimizer);
+            if (options.contains("--stats")) optimizer.printStatistics(program, optimized);
+            program = optimized;
+        }
+        if (options.contains("--ir")) program.print();
+        if (options.contains("--compile")) {
+            BytecodeCompiler.compile(program).run(System.in, System.out);
+        } else {
+            new Interpreter(program, System.in, System.out).run();
+        }
+    }
+}
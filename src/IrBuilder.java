@@ -0,0 +1,404 @@
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+//Перевод проверенной программы (Ast после SemanticChecker без ошибок) в IrProgram за один обход дерева
+//без рекурсии. Выражения выдаются в обратной польской записи при выходе из узла; переходы операторов
+//выдаются после нужного потомка (условия, ветви then, границы цикла) и дописываются при выходе из оператора.
+//Типы операций выбираются по типам выражений из SemanticChecker: int-операнд операции над float
+//(и значение, присваиваемое float-переменной) переводится в float командой I2F сразу после вычисления.
+//Цикл for i ass a to b do S: граница b вычисляется один раз в служебную ячейку, тело выполняется,
+//пока i <= b, после тела i увеличивается на 1; для int-переменной проверка и увеличение — по одной команде.
+//С Optimizer код строится по его пометкам: постоянное выражение — PUSH, удалённые операторы и условия
+//не выдаются, вынесенные выражения цикла вычисляются перед ним в служебные ячейки.
+public class IrBuilder {
+    //Изменение глубины стека значений каждой командой IrProgram
+    private static final int[] STACK_EFFECT = {0, 1, 1, -1, -1, -1, -1, -1, 0,
+            -1, -1, -1, -1, 0, 0, -1, -1, -1, -1, -1, -1,
+            -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, -1, 0, 0,
+            0, 0, 0, -1, -1, -1, 0};
+
+    private final Ast ast;
+    private final LexemeTable table;
+    private final SemanticChecker types;
+    //Пометки оптимизации (null — без неё)
+    private final Optimizer plan;
+    //Служебная ячейка каждого вынесенного из цикла выражения (по узлу, -1 — ещё нет)
+    private final int[] hoistedSlots;
+    //Вынесенное выражение, код которого выдаётся сейчас перед циклом (-1 — нет)
+    private int hoisting = -1;
+    private final AstVisitor visitor = new AstVisitor() {
+        @Override
+        public boolean enter(Ast ast, int node) {
+            return enterNode(node);
+        }
+
+        @Override
+        public void exit(Ast ast, int node) {
+            exitNode(node);
+        }
+    };
+
+    private int[] code = new int[256];
+    private int size = 0;
+    private long[] constants = new long[16];
+    private ValueType[] constantTypes = new ValueType[16];
+    private int constantCount = 0;
+    //Номера уже добавленных констант по типу и значению
+    private final Map<ValueType, Map<Long, Integer>> constantIndex = new EnumMap<>(ValueType.class);
+    //Слот каждой переменной по номеру идентификатора (-1 — нет)
+    private int[] slots = new int[0];
+    private String[] slotNames = new String[16];
+    private ValueType[] slotTypes = new ValueType[16];
+    private int slotCount = 0;
+    //Глубина стека значений после выданного кода и её максимум
+    private int depth = 0;
+    private int maxStack = 0;
+    //Стек узлов от корня до текущего; для операторов — адрес начала цикла и место адреса перехода для дописывания
+    private int[] path = new int[16];
+    private int[] labels = new int[16];
+    private int[] patches = new int[16];
+    private int pathTop = 0;
+
+    private IrBuilder(Ast ast, SemanticChecker types, Optimizer plan) {
+        this.ast = ast;
+        this.table = ast.getTable();
+        this.types = types;
+        this.plan = plan;
+        this.hoistedSlots = new int[plan != null ? ast.size() : 0];
+        Arrays.fill(hoistedSlots, -1);
+    }
+
+    //Переводит программу; checker должен быть уже выполнен над ast без ошибок
+    public static IrProgram build(Ast ast, SemanticChecker checker) {
+        return build(ast, checker, null);
+    }
+
+    //Переводит программу по пометкам optimizer (после его run()); null — без оптимизации
+    public static IrProgram build(Ast ast, SemanticChecker checker, Optimizer optimizer) {
+        if (ast.root() == -1) {
+            throw new IllegalStateException("No program to lower");
+        }
+        if (!checker.getDiagnostics().isEmpty()) {
+            throw new IllegalArgumentException("Program has semantic errors");
+        }
+        return new IrBuilder(ast, checker, optimizer).build();
+    }
+
+    private IrProgram build() {
+        ast.walk(visitor);
+        emit(IrProgram.HALT);
+        return new IrProgram(Arrays.copyOf(code, size), Arrays.copyOf(constants, constantCount),
+                Arrays.copyOf(constantTypes, constantCount), Arrays.copyOf(slotNames, slotCount), Arrays.copyOf(slotTypes, slotCount), maxStack);
+    }
+
+    private boolean enterNode(int node) {
+        if (pathTop == path.length) {
+            path = Arrays.copyOf(path, pathTop * 2);
+            labels = Arrays.copyOf(labels, pathTop * 2);
+            patches = Arrays.copyOf(patches, pathTop * 2);
+        }
+        path[pathTop] = node;
+        labels[pathTop] = size;
+        patches[pathTop++] = -1;
+        if (plan != null && node != hoisting) {
+            if (plan.isRemoved(node) || plan.isConstant(node) || plan.isHoisted(node)) return false;
+            NodeKind kind = ast.kind(node);
+            if (kind == NodeKind.WHILE || kind == NodeKind.FOR) {
+                emitHoisted(node);
+                labels[pathTop - 1] = size;
+            }
+        }
+        if (ast.kind(node) != NodeKind.DECLARATIONS) return true;
+        for (int declaration = ast.firstChild(node); declaration != -1; declaration = ast.nextSibling(declaration)) {
+            for (int variable = ast.firstChild(declaration); variable != -1; variable = ast.nextSibling(variable)) {
+                int id = table.identifierId(ast.token(variable));
+                if (id >= slots.length) {
+                    int length = slots.length;
+                    slots = Arrays.copyOf(slots, Math.max(id + 1, length * 2));
+                    Arrays.fill(slots, length, slots.length, -1);
+                }
+                slots[id] = newSlot(ast.text(variable), declaredType(ast.tokenType(declaration)));
+            }
+        }
+        return false;
+    }
+
+    private void exitNode(int node) {
+        int top = --pathTop;
+        if (plan != null && node != hoisting) {
+            if (plan.isRemoved(node)) {
+                //переход через else нужен и после пустой ветви then
+                if (ast.kind(path[top - 1]) == NodeKind.IF) exitChild(node, top - 1);
+                return;
+            }
+            if (plan.isConstant(node) || plan.isHoisted(node)) {
+                if (plan.isConstant(node)) emit(IrProgram.PUSH, constant(plan.constantValue(node), types.typeOf(node)));
+                else emit(IrProgram.LOAD, hoistedSlot(node));
+                exitChild(node, top - 1);
+                return;
+            }
+        }
+        switch (ast.kind(node)) {
+            case VARIABLE:
+                if (!isTarget(node)) emit(IrProgram.LOAD, slot(node));
+                break;
+            case LITERAL:
+                emit(IrProgram.PUSH, constant(literalValue(table, ast.token(node)), types.typeOf(node)));
+                break;
+            case UNARY:
+                if (ast.tokenType(node) == TokenType.NOT) emit(IrProgram.NOT);
+                else emit(types.typeOf(node) == ValueType.FLOAT ? IrProgram.FNEG : IrProgram.INEG);
+                break;
+            case BINARY:
+                emitBinary(node);
+                break;
+            case ASSIGN:
+                emit(IrProgram.STORE, slot(ast.firstChild(node)));
+                break;
+            case READ:
+                for (int variable = ast.firstChild(node); variable != -1; variable = ast.nextSibling(variable)) {
+                    emit(readOperation(variableType(variable)), slot(variable), table.line(ast.token(variable)));
+                }
+                break;
+            case WRITE:
+                emit(IrProgram.WRITE_LINE);
+                break;
+            case IF:
+                patch(patches[top]);
+                break;
+            case WHILE:
+                emit(IrProgram.JUMP, labels[top]);
+                patch(patches[top]);
+                break;
+            case FOR: {
+                if (plan != null && plan.isRemoved(ast.child(node, 1))) break;
+                int variable = ast.firstChild(ast.firstChild(node));
+                if (variableType(variable) == ValueType.INT) {
+                    emit(IrProgram.INC, slot(variable));
+                } else {
+                    emit(IrProgram.LOAD, slot(variable));
+                    emit(IrProgram.PUSH, constant(Double.doubleToRawLongBits(1.0), ValueType.FLOAT));
+                    emit(IrProgram.FADD);
+                    emit(IrProgram.STORE, slot(variable));
+                }
+                emit(IrProgram.JUMP, labels[top]);
+                patch(patches[top]);
+                break;
+            }
+            case PROGRAM:
+                return;
+            default:
+                break;
+        }
+        if (node == hoisting) {
+            emit(IrProgram.STORE, hoistedSlot(node));
+            return;
+        }
+        exitChild(node, top - 1);
+    }
+
+    //Вычисляет выражения, вынесенные из цикла loop, в их служебные ячейки
+    private void emitHoisted(int loop) {
+        for (int node = plan.firstHoisted(loop); node != -1; node = plan.nextHoisted(node)) {
+            hoisting = node;
+            ast.walk(node, visitor);
+        }
+        hoisting = -1;
+    }
+
+    private int hoistedSlot(int node) {
+        if (hoistedSlots[node] == -1) hoistedSlots[node] = newSlot("$hoisted" + slotCount, types.typeOf(node));
+        return hoistedSlots[node];
+    }
+
+    //Код после потомка node оператора или выражения path[parent]
+    private void exitChild(int node, int parent) {
+        int owner = path[parent];
+        switch (ast.kind(owner)) {
+            case BINARY:
+                if (types.typeOf(node) == ValueType.INT && isFloatOperation(owner)) emit(IrProgram.I2F);
+                break;
+            case ASSIGN:
+                if (node != ast.firstChild(owner) && types.typeOf(node) == ValueType.INT
+                        && variableType(ast.firstChild(owner)) == ValueType.FLOAT) {
+                    emit(IrProgram.I2F);
+                }
+                break;
+            case WRITE:
+                emit(writeOperation(types.typeOf(node)));
+                break;
+            case IF:
+                if (plan != null && plan.isRemoved(ast.firstChild(owner))) break; // постоянное условие: без переходов
+                if (node == ast.firstChild(owner)) {
+                    patches[parent] = emitJump(IrProgram.JUMP_IF_FALSE);
+                } else if (ast.nextSibling(node) != -1) {
+                    int jump = emitJump(IrProgram.JUMP);
+                    patch(patches[parent]);
+                    patches[parent] = jump;
+                }
+                break;
+            case WHILE:
+                if (node == ast.firstChild(owner)) patches[parent] = emitJump(IrProgram.JUMP_IF_FALSE);
+                break;
+            case FOR:
+                if (node == ast.child(owner, 1)) exitLimit(node, owner, parent);
+                break;
+            default:
+                break;
+        }
+    }
+
+    //Граница цикла вычислена: сохранить её и выдать проверку в начале каждого прохода
+    private void exitLimit(int limit, int loop, int parent) {
+        int variable = ast.firstChild(ast.firstChild(loop));
+        ValueType type = variableType(variable);
+        if (type == ValueType.FLOAT && types.typeOf(limit) == ValueType.INT) emit(IrProgram.I2F);
+        int bound = newSlot("$limit" + slotCount, type);
+        emit(IrProgram.STORE, bound);
+        labels[parent] = size;
+        if (type == ValueType.INT) {
+            emit(IrProgram.FOR_TEST, slot(variable), bound, -1);
+            patches[parent] = size - 1;
+        } else {
+            emit(IrProgram.LOAD, slot(variable));
+            emit(IrProgram.LOAD, bound);
+            emit(IrProgram.FLE);
+            patches[parent] = emitJump(IrProgram.JUMP_IF_FALSE);
+        }
+    }
+
+    private void emitBinary(int node) {
+        boolean floats = isFloatOperation(node);
+        int operation;
+        switch (ast.tokenType(node)) {
+            case PLUS: operation = floats ? IrProgram.FADD : IrProgram.IADD; break;
+            case MINUS: operation = floats ? IrProgram.FSUB : IrProgram.ISUB; break;
+            case MUL: operation = floats ? IrProgram.FMUL : IrProgram.IMUL; break;
+            case DIV: operation = floats ? IrProgram.FDIV : IrProgram.IDIV; break;
+            case OR: operation = IrProgram.OR; break;
+            case AND: operation = IrProgram.AND; break;
+            case EQ: operation = floats ? IrProgram.FEQ : IrProgram.IEQ; break;
+            case NEQ: operation = floats ? IrProgram.FNE : IrProgram.INE; break;
+            case LT: operation = floats ? IrProgram.FLT : IrProgram.ILT; break;
+            case LE: operation = floats ? IrProgram.FLE : IrProgram.ILE; break;
+            case GT: operation = floats ? IrProgram.FGT : IrProgram.IGT; break;
+            default: operation = floats ? IrProgram.FGE : IrProgram.IGE; break;
+        }
+        if (operation == IrProgram.IDIV) emit(operation, table.line(ast.token(node)));
+        else emit(operation);
+    }
+
+    //Операция над float: хотя бы один из операндов float
+    private boolean isFloatOperation(int node) {
+        int left = ast.firstChild(node);
+        return types.typeOf(left) == ValueType.FLOAT || types.typeOf(ast.nextSibling(left)) == ValueType.FLOAT;
+    }
+
+    //Переменная, в которую записывается значение (а не читается): левая часть присваивания или аргумент read
+    private boolean isTarget(int node) {
+        int owner = path[pathTop - 1];
+        NodeKind kind = ast.kind(owner);
+        return kind == NodeKind.READ || kind == NodeKind.ASSIGN && node == ast.firstChild(owner);
+    }
+
+    static long literalValue(LexemeTable table, int token) {
+        switch (table.type(token)) {
+            case INTEGER:
+                return table.integerValue(token);
+            case FLOAT:
+                return Double.doubleToRawLongBits(table.floatValue(token));
+            case TRUE:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private static int readOperation(ValueType type) {
+        switch (type) {
+            case INT:
+                return IrProgram.READ_INT;
+            case FLOAT:
+                return IrProgram.READ_FLOAT;
+            default:
+                return IrProgram.READ_BOOL;
+        }
+    }
+
+    private static int writeOperation(ValueType type) {
+        switch (type) {
+            case INT:
+                return IrProgram.WRITE_INT;
+            case FLOAT:
+                return IrProgram.WRITE_FLOAT;
+            default:
+                return IrProgram.WRITE_BOOL;
+        }
+    }
+
+    private static ValueType declaredType(TokenType type) {
+        switch (type) {
+            case INT:
+                return ValueType.INT;
+            case FLOAT_TYPE:
+                return ValueType.FLOAT;
+            default:
+                return ValueType.BOOL;
+        }
+    }
+
+    private ValueType variableType(int variable) {
+        return slotTypes[slot(variable)];
+    }
+
+    private int slot(int variable) {
+        return slots[table.identifierId(ast.token(variable))];
+    }
+
+    private int newSlot(String name, ValueType type) {
+        if (slotCount == slotNames.length) {
+            slotNames = Arrays.copyOf(slotNames, slotCount * 2);
+            slotTypes = Arrays.copyOf(slotTypes, slotCount * 2);
+        }
+        slotNames[slotCount] = name;
+        slotTypes[slotCount] = type;
+        return slotCount++;
+    }
+
+    private int constant(long value, ValueType type) {
+        Map<Long, Integer> index = constantIndex.computeIfAbsent(type, t -> new HashMap<>());
+        Integer known = index.get(value);
+        if (known != null) return known;
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+            constantTypes = Arrays.copyOf(constantTypes, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        constantTypes[constantCount] = type;
+        index.put(value, constantCount);
+        return constantCount++;
+    }
+
+    //Выдаёт переход с пока неизвестным адресом; возвращает место адреса для patch()
+    private int emitJump(int operation) {
+        emit(operation, -1);
+        return size - 1;
+    }
+
+    //Дописывает адрес перехода: следующая выдаваемая команда
+    private void patch(int at) {
+        if (at != -1) code[at] = size;
+    }
+
+    private void emit(int operation, int... operands) {
+        if (size + 1 + operands.length > code.length) code = Arrays.copyOf(code, code.length * 2);
+        code[size++] = operation;
+        for (int operand : operands) {
+            code[size++] = operand;
+        }
+        depth += STACK_EFFECT[operation];
+        maxStack = Math.max(maxStack, depth);
+    }
+}
@@ -0,0 +1,137 @@
+//Промежуточный код программы для стековой машины (строит IrBuilder, исполняет Interpreter).
+//Команда — код операции и его операнды подряд в массиве code. Значения всех типов хранятся в long:
+//int как есть, float — биты double, bool — 0 или 1. Переменные — ячейки (слоты) с номерами от 0,
+//за описанными переменными идут служебные ячейки (границы циклов for).
+public class IrProgram {
+    // Коды операций; в скобках — операнды в code, после стрелки — действие над стеком
+    public static final int HALT = 0;
+    public static final int PUSH = 1;           // (номер константы) -> значение
+    public static final int LOAD = 2;           // (слот) -> значение
+    public static final int STORE = 3;          // (слот) значение ->
+    public static final int IADD = 4;           // int int -> int
+    public static final int ISUB = 5;
+    public static final int IMUL = 6;
+    public static final int IDIV = 7;           // (строка для сообщения о делении на ноль)
+    public static final int INEG = 8;           // int -> int
+    public static final int FADD = 9;           // float float -> float
+    public static final int FSUB = 10;
+    public static final int FMUL = 11;
+    public static final int FDIV = 12;
+    public static final int FNEG = 13;          // float -> float
+    public static final int I2F = 14;           // int -> float
+    public static final int IEQ = 15;           // int int -> bool (и bool bool для IEQ, INE)
+    public static final int INE = 16;
+    public static final int ILT = 17;
+    public static final int ILE = 18;
+    public static final int IGT = 19;
+    public static final int IGE = 20;
+    public static final int FEQ = 21;           // float float -> bool
+    public static final int FNE = 22;
+    public static final int FLT = 23;
+    public static final int FLE = 24;
+    public static final int FGT = 25;
+    public static final int FGE = 26;
+    public static final int AND = 27;           // bool bool -> bool
+    public static final int OR = 28;
+    public static final int NOT = 29;           // bool -> bool
+    public static final int JUMP = 30;          // (адрес)
+    public static final int JUMP_IF_FALSE = 31; // (адрес) bool ->
+    public static final int FOR_TEST = 32;      // (слот, слот границы, адрес): переход, если int-переменная больше границы
+    public static final int INC = 33;           // (слот): int-переменная + 1
+    public static final int READ_INT = 34;      // (слот, строка для сообщения об ошибке ввода)
+    public static final int READ_FLOAT = 35;
+    public static final int READ_BOOL = 36;
+    public static final int WRITE_INT = 37;     // значение ->
+    public static final int WRITE_FLOAT = 38;
+    public static final int WRITE_BOOL = 39;
+    public static final int WRITE_LINE = 40;    // конец оператора write
+
+    private static final String[] NAMES = {"HALT", "PUSH", "LOAD", "STORE", "IADD", "ISUB", "IMUL", "IDIV", "INEG",
+            "FADD", "FSUB", "FMUL", "FDIV", "FNEG", "I2F", "IEQ", "INE", "ILT", "ILE", "IGT", "IGE",
+            "FEQ", "FNE", "FLT", "FLE", "FGT", "FGE", "AND", "OR", "NOT", "JUMP", "JUMP_IF_FALSE", "FOR_TEST", "INC",
+            "READ_INT", "READ_FLOAT", "READ_BOOL", "WRITE_INT", "WRITE_FLOAT", "WRITE_BOOL", "WRITE_LINE"};
+    //Число операндов каждой команды
+    private static final int[] OPERANDS = {0, 1, 1, 1, 0, 0, 0, 1, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 3, 1,
+            2, 2, 2, 0, 0, 0, 0};
+
+    final int[] code;
+    final long[] constants;
+    final ValueType[] constantTypes;
+    final String[] slotNames;
+    final ValueType[] slotTypes;
+    //Наибольшая глубина стека значений
+    final int maxStack;
+
+    IrProgram(int[] code, long[] constants, ValueType[] constantTypes, String[] slotNames, ValueType[] slotTypes,
+              int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.constantTypes = constantTypes;
+        this.slotNames = slotNames;
+        this.slotTypes = slotTypes;
+        this.maxStack = maxStack;
+    }
+
+    //Длина кода в int
+    public int size() {
+        return code.length;
+    }
+
+    //Число команд: длина кода без операндов
+    public int instructionCount() {
+        int count = 0;
+        for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int slotCount() {
+        return slotNames.length;
+    }
+
+    //Слот переменной name (-1, если такой переменной нет)
+    public int slot(String name) {
+        for (int i = 0; i < slotNames.length; i++) {
+            if (slotNames[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public String slotName(int slot) {
+        return slotNames[slot];
+    }
+
+    public ValueType slotType(int slot) {
+        return slotTypes[slot];
+    }
+
+    private String constantText(int constant) {
+        switch (constantTypes[constant]) {
+            case FLOAT:
+                return String.valueOf(Double.longBitsToDouble(constants[constant]));
+            case BOOL:
+                return String.valueOf(constants[constant] != 0);
+            default:
+                return String.valueOf(constants[constant]);
+        }
+    }
+
+    public void print() {
+        System.out.println("Промежуточный код:");
+        for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+            int op = code[pc];
+            StringBuilder sb = new StringBuilder(String.format("%5d  %s", pc, NAMES[op]));
+            for (int i = 1; i <= OPERANDS[op]; i++) {
+                sb.append(' ').append(code[pc + i]);
+            }
+            if (op == PUSH) sb.append("  ; ").append(constantText(code[pc + 1]));
+            if (op == LOAD || op == STORE || op == INC || op == FOR_TEST || op >= READ_INT && op <= READ_BOOL) {
+                sb.append("  ; ").append(slotNames[code[pc + 1]]);
+            }
+            System.out.println(sb);
+        }
+    }
+}
@@ -1,29 +1,387 @@
 import java.util.*;
 
+//Таблица лексем в упакованном виде: по одному примитивному массиву на каждое поле
+//(тип, смещение, длина, строка, колонка, ссылка). Объекты Token создаются только по запросу.
 public class LexemeTable {
-    private final List<Token> lexemes = new ArrayList<>();
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private static final byte IDENTIFIER = (byte) TokenType.IDENTIFIER.ordinal();
+    private static final byte INTEGER = (byte) TokenType.INTEGER.ordinal();
+    private static final byte FLOAT = (byte) TokenType.FLOAT.ordinal();
+
+    //Источник, в который указывают неотрицательные смещения (заменяется при правке текста, см. splice)
+    private CharSource source;
+    //Текст лексем, которые нельзя прочитать из источника. Такие лексемы хранят
+    //смещение в виде -(смещение в ownText) - 1.
+    private final StringBuilder ownText = new StringBuilder();
+
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    //Для IDENTIFIER — номер в таблице идентификаторов, для INTEGER и FLOAT — номер значения в literals
+    private int[] refs = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    //Значения числовых литералов: long для INTEGER, биты double для FLOAT
+    private long[] literals = new long[INITIAL_CAPACITY];
+    private int literalCount = 0;
+    //Значения лексем, убранных splice(): их места освобождает compactLiterals()
+    private int deadLiterals = 0;
+    //Разбор значений лексем, добавленных без готового значения
+    private NumberLiteral number;
+
+    public LexemeTable() {
+        this(null);
+    }
+
+    public LexemeTable(CharSource source) {
+        this.source = source;
+    }
+
+    //Строит таблицу из готового списка лексем
+    public static LexemeTable of(List<Token> tokens) {
+        LexemeTable table = new LexemeTable();
+        for (Token token : tokens) {
+            table.add(token);
+        }
+        return table;
+    }
 
     public void add(Token token) {
-        lexemes.add(token);
+        TokenType type = token.getType();
+        String value = token.getValue();
+        int index = append(type, token.getLine(), token.getColumn(), token.getIdentifierId());
+        if (isNumber(type)) refs[index] = addLiteral(decode(CharSource.of(value), 0, value.length(), type));
+        offsets[index] = -ownText.length() - 1;
+        lengths[index] = value.length();
+        ownText.append(value);
+    }
+
+    //Добавляет лексему, занимающую диапазон [offset, offset + length) источника таблицы.
+    //Значение числового литерала разбирается по тексту (ошибки в нём дают значение 0).
+    public void add(TokenType type, int offset, int length, int line, int column, int identifierId) {
+        requireSource();
+        long value = isNumber(type) ? decode(source, offset, offset + length, type) : 0;
+        add(type, offset, length, line, column, identifierId, value);
+    }
+
+    //То же с уже разобранным значением числового литерала (long или биты double; для остальных лексем не используется).
+    //Если источник не хранит текст (потоковый режим), символы копируются в таблицу.
+    public void add(TokenType type, int offset, int length, int line, int column, int identifierId, long value) {
+        requireSource();
+        int index = append(type, line, column, identifierId);
+        if (isNumber(type)) refs[index] = addLiteral(value);
+        if (source.retainsText()) {
+            offsets[index] = offset;
+        } else {
+            offsets[index] = -ownText.length() - 1;
+            for (int i = 0; i < length; i++) {
+                ownText.append(source.charAt(offset + i));
+            }
+        }
+        lengths[index] = length;
+    }
+
+    //Лексемы по диапазону текста нужен источник; таблица из LexemeTable() принимает только add(Token)
+    private void requireSource() {
+        if (source == null) throw new IllegalStateException("Lexeme table has no source text");
+    }
+
+    private int append(TokenType type, int line, int column, int ref) {
+        if (size == types.length) {
+            grow(size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        lines[size] = line;
+        columns[size] = column;
+        refs[size] = ref;
+        return size++;
+    }
+
+    private static boolean isNumber(TokenType type) {
+        return type == TokenType.INTEGER || type == TokenType.FLOAT;
+    }
+
+    private long decode(CharSource text, int start, int end, TokenType type) {
+        if (number == null) number = new NumberLiteral();
+        number.decode(text, start, end, type == TokenType.FLOAT);
+        return number.bits;
+    }
+
+    private int addLiteral(long value) {
+        if (literalCount == literals.length) {
+            literals = Arrays.copyOf(literals, literalCount * 2);
+        }
+        literals[literalCount] = value;
+        return literalCount++;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //Число значений числовых литералов в таблице
+    int literalCount() {
+        return literalCount;
+    }
+
+    //Увеличивает таблицу на count лексем и literalCount значений; новые позиции заполняются через copyFrom()
+    void reserve(int count, int literalCount) {
+        int capacity = size + count;
+        if (capacity > types.length) {
+            grow(capacity);
+        }
+        size = capacity;
+        int literalCapacity = this.literalCount + literalCount;
+        if (literalCapacity > literals.length) {
+            literals = Arrays.copyOf(literals, literalCapacity);
+        }
+        this.literalCount = literalCapacity;
+    }
+
+    //Копирует лексемы part в позиции [at, at + part.size()), а их значения литералов — в [literalAt, ...):
+    //строки сдвигаются на lineDelta, номера идентификаторов переводятся через idMap (null — номера уже общие).
+    //part должна ссылаться на тот же текст, что и эта таблица. Разные участки можно копировать параллельно.
+    void copyFrom(LexemeTable part, int at, int literalAt, int lineDelta, int[] idMap) {
+        int n = part.size;
+        System.arraycopy(part.types, 0, types, at, n);
+        System.arraycopy(part.offsets, 0, offsets, at, n);
+        System.arraycopy(part.lengths, 0, lengths, at, n);
+        System.arraycopy(part.columns, 0, columns, at, n);
+        System.arraycopy(part.literals, 0, literals, literalAt, part.literalCount);
+        for (int i = 0; i < n; i++) {
+            lines[at + i] = part.lines[i] + lineDelta;
+            int ref = part.refs[i];
+            byte type = part.types[i];
+            if (type == IDENTIFIER) {
+                if (idMap != null) ref = idMap[ref];
+            } else if (type == INTEGER || type == FLOAT) {
+                ref += literalAt;
+            }
+            refs[at + i] = ref;
+        }
+    }
+
+    //Заменяет лексемы [from, to) лексемами replacement, после чего таблица ссылается на source.
+    //Лексемы за заменой сдвигаются: смещение на offsetDelta, строка на lineDelta, а колонка на columnDelta —
+    //только у лексем, стоявших на строке columnLine (до сдвига строк). Значения литералов замены
+    //дописываются в конец literals; когда значений заменённых лексем становится больше живых,
+    //literals уплотняется, так что при долгой правке он не растёт сверх удвоенного числа живых значений.
+    void splice(int from, int to, LexemeTable replacement, CharSource source,
+                int offsetDelta, int lineDelta, int columnLine, int columnDelta) {
+        for (int i = from; i < to; i++) {
+            if (types[i] == INTEGER || types[i] == FLOAT) deadLiterals++;
+        }
+        for (int i = to; i < size; i++) {
+            if (lines[i] == columnLine) columns[i] += columnDelta;
+            lines[i] += lineDelta;
+            offsets[i] += offsetDelta;
+        }
+        int inserted = replacement.size;
+        int newSize = size - (to - from) + inserted;
+        if (newSize > types.length) {
+            grow(Math.max(newSize, types.length * 2));
+        }
+        int tail = size - to;
+        int at = from + inserted;
+        if (at != to) {
+            System.arraycopy(types, to, types, at, tail);
+            System.arraycopy(offsets, to, offsets, at, tail);
+            System.arraycopy(lengths, to, lengths, at, tail);
+            System.arraycopy(lines, to, lines, at, tail);
+            System.arraycopy(columns, to, columns, at, tail);
+            System.arraycopy(refs, to, refs, at, tail);
+        }
+        int literalAt = literalCount;
+        if (literalAt + replacement.literalCount > literals.length) {
+            literals = Arrays.copyOf(literals, Math.max(literalAt + replacement.literalCount, literals.length * 2));
+        }
+        literalCount += replacement.literalCount;
+        copyFrom(replacement, from, literalAt, 0, null);
+        size = newSize;
+        this.source = source;
+        if (deadLiterals * 2 > literalCount) compactLiterals();
+    }
+
+    //Оставляет в literals только значения лексем таблицы, по порядку лексем
+    private void compactLiterals() {
+        long[] live = new long[Math.max(INITIAL_CAPACITY, (literalCount - deadLiterals) * 2)];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == INTEGER || types[i] == FLOAT) {
+                live[count] = literals[refs[i]];
+                refs[i] = count++;
+            }
+        }
+        literals = live;
+        literalCount = count;
+        deadLiterals = 0;
+    }
+
+    //Номер первой лексемы, начинающейся не раньше offset (size(), если таких нет).
+    //Таблица должна ссылаться на источник: лексемы упорядочены по смещению.
+    public int indexAtOffset(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    //Смещение лексемы в источнике или -1, если её текст хранится в самой таблице
+    public int offset(int index) {
+        return Math.max(offsets[index], -1);
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public int column(int index) {
+        return columns[index];
+    }
+
+    //Номер идентификатора в IdentifierTable (0, если лексема не идентификатор)
+    public int identifierId(int index) {
+        return types[index] == IDENTIFIER ? refs[index] : 0;
     }
 
+    //Значение литерала INTEGER (0 для остальных лексем)
+    public long integerValue(int index) {
+        return types[index] == INTEGER ? literals[refs[index]] : 0;
+    }
+
+    //Значение литерала FLOAT (0.0 для остальных лексем)
+    public double floatValue(int index) {
+        return types[index] == FLOAT ? Double.longBitsToDouble(literals[refs[index]]) : 0.0;
+    }
+
+    public String text(int index) {
+        int offset = offsets[index];
+        if (offset >= 0) {
+            return source.text(offset, offset + lengths[index]);
+        }
+        int start = -offset - 1;
+        return ownText.substring(start, start + lengths[index]);
+    }
+
+    //Совместимое представление в виде списка: Token создаётся при каждом обращении к элементу
     public List<Token> getLexemes() {
-        return lexemes;
+        return new AbstractList<>() {
+            @Override
+            public Token get(int index) {
+                Objects.checkIndex(index, size);
+                int offset = offsets[index];
+                if (offset >= 0) {
+                    return new Token(type(index), source, offset, lengths[index], lines[index], columns[index],
+                            identifierId(index));
+                }
+                return new Token(type(index), text(index), lines[index], columns[index], identifierId(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    //Курсор, стоящий на лексеме index
+    public Cursor cursor(int index) {
+        return new Cursor(index);
+    }
+
+    //Курсор для последовательного обхода таблицы без создания объектов Token.
+    //За концом таблицы курсор стоит на EOF с позицией -1:-1.
+    public class Cursor implements TokenStream {
+        private int index;
+
+        private Cursor(int index) {
+            this.index = index;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public boolean atEnd() {
+            return index >= size;
+        }
+
+        public TokenType type() {
+            return index < size ? TYPES[types[index]] : TokenType.EOF;
+        }
+
+        public int line() {
+            return index < size ? lines[index] : -1;
+        }
+
+        public int column() {
+            return index < size ? columns[index] : -1;
+        }
+
+        public String text() {
+            return index < size ? LexemeTable.this.text(index) : "";
+        }
+
+        public int offset() {
+            return index < size ? LexemeTable.this.offset(index) : -1;
+        }
+
+        public int identifierId() {
+            return index < size ? LexemeTable.this.identifierId(index) : 0;
+        }
+
+        public long integerValue() {
+            return index < size ? LexemeTable.this.integerValue(index) : 0;
+        }
+
+        public double floatValue() {
+            return index < size ? LexemeTable.this.floatValue(index) : 0.0;
+        }
+
+        public void advance() {
+            index++;
+        }
     }
 
     public void print() {
         System.out.println("Таблица лексем:");
-        for (Token token : lexemes) {
-            System.out.printf("%s\t'%s'\t(%d:%d)\n", token.getType(), token.getValue(), token.getLine(), token.getColumn());
+        for (int i = 0; i < size; i++) {
+            System.out.printf("%s\t'%s'\t(%d:%d)\n", type(i), text(i), lines[i], columns[i]);
         }
     }
     public void printTable() {
         System.out.println("Таблица лексем:");
         System.out.printf("%-4s %-12s %-12s %-6s %-6s%n", "№", "Лексема", "Тип", "Строка", "Колонка");
-        int i = 1;
-        for (Token token : lexemes) {
+        for (int i = 0; i < size; i++) {
             System.out.printf("%-4d %-12s %-12s %-6d %-6d%n",
-                    i++, token.getValue(), token.getType(), token.getLine(), token.getColumn());
+                    i + 1, text(i), type(i), lines[i], columns[i]);
         }
     }
 
@@ -1,12 +1,37 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Lexer {
-    private final String input;
+    private CharSource input;
+    private final boolean lazyValues;
+    private final boolean byteColumns;
     private int pos = 0;
     private int line = 1;
     private int col = 1;
-    private final LexemeTable lexemeTable = new LexemeTable();
-    private final IdentifierTable identifierTable = new IdentifierTable();
+    //Начало последней считанной лексемы (смещение, строка, колонка)
+    private int tokenStart;
+    private int tokenLine;
+    private int tokenCol;
+    //Номер идентификатора последней лексемы (0 для остальных лексем)
+    private int tokenId;
+    //Хеш последнего считанного слова (как у String.hashCode)
+    private int wordHash;
+    //Конец участка при параллельном разборе (-1 — разбирается весь вход)
+    private int chunkEnd = -1;
+    private final LexemeTable lexemeTable;
+    private final IdentifierTable identifierTable;
+    private final Diagnostics diagnostics = new Diagnostics();
+    //Режим восстановления: лексические ошибки не бросают исключение, а попадают в диагностики
+    private boolean recovery;
+    //Значение последнего числового литерала (long или биты double), см. NumberLiteral
+    private long tokenValue;
+    private final NumberLiteral number = new NumberLiteral();
 
     //Набор символов, с которых могут начинаться операторы,
     private static final Set<Character> OPERATOR_START_CHARS = Set.of('=', '<', '>', '+', '-', '*', '/', '(', ')', ',', ':');
@@ -60,6 +85,112 @@ public class Lexer {
             Map.entry("read", TokenType.READ),
             Map.entry("write", TokenType.WRITE)
     );
+    //Классы символов ASCII для диспетчеризации без упаковки Character и поиска в Set
+    private static final byte C_OTHER = 0;
+    private static final byte C_LETTER = 1;
+    private static final byte C_DIGIT = 2;
+    private static final byte C_DOT = 3;
+    private static final byte C_SPACE = 4;
+    private static final byte C_COMMENT = 5;
+    private static final byte C_DELIMITER = 6;
+    private static final byte C_OPERATOR = 7;
+    private static final byte C_END = 8;
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    //Префиксное дерево операторов: узел * 128 + символ -> следующий узел (0 — перехода нет).
+    //Буквы сводятся к нижнему регистру, поэтому словесные операторы совпадают без учёта регистра.
+    private static final int MAX_OPERATOR_NODES = 64;
+    private static final byte[] OPERATOR_NEXT = new byte[MAX_OPERATOR_NODES * 128];
+    //Тип оператора, заканчивающегося в узле, или null
+    private static final TokenType[] OPERATOR_ACCEPT = new TokenType[MAX_OPERATOR_NODES];
+
+    //Совершенная хеш-таблица ключевых слов, строится из KEYWORDS при загрузке класса.
+    //Хеш зависит только от двух первых букв, последней буквы и длины слова, поэтому считается прямо по входу.
+    private static final char[][] KEYWORD_TEXT;
+    private static final TokenType[] KEYWORD_TYPE;
+    private static final int KEYWORD_MULTIPLIER;
+    private static final int KEYWORD_MIN_LENGTH;
+    private static final int KEYWORD_MAX_LENGTH;
+
+    static {
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (String keyword : KEYWORDS.keySet()) {
+            minLength = Math.min(minLength, keyword.length());
+            maxLength = Math.max(maxLength, keyword.length());
+        }
+        KEYWORD_MIN_LENGTH = minLength;
+        KEYWORD_MAX_LENGTH = maxLength;
+
+        char[][] text = null;
+        int multiplier = 0;
+        search:
+        for (int size = Integer.highestOneBit(KEYWORDS.size()) * 2; ; size *= 2) {
+            if (size > 1 << 16) {
+                throw new IllegalStateException("Cannot build perfect hash for keywords");
+            }
+            for (int m = 1; m < 4096; m++) {
+                text = new char[size][];
+                boolean collision = false;
+                for (String keyword : KEYWORDS.keySet()) {
+                    int h = keywordHash(keyword.charAt(0), keyword.charAt(Math.min(1, keyword.length() - 1)), keyword.charAt(keyword.length() - 1),
+                            keyword.length(), m, size - 1);
+                    if (text[h] != null) {
+                        collision = true;
+                        break;
+                    }
+                    text[h] = keyword.toCharArray();
+                }
+                if (!collision) {
+                    multiplier = m;
+                    break search;
+                }
+            }
+        }
+        KEYWORD_TEXT = text;
+        KEYWORD_MULTIPLIER = multiplier;
+        KEYWORD_TYPE = new TokenType[text.length];
+        for (int h = 0; h < text.length; h++) {
+            if (text[h] != null) KEYWORD_TYPE[h] = KEYWORDS.get(new String(text[h]));
+        }
+    }
+
+    private static int keywordHash(char first, char second, char last, int length, int multiplier, int mask) {
+        return (((first * 31 + second) * multiplier) ^ (last * 7) ^ length) & mask;
+    }
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = C_LETTER;
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = C_LETTER;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = C_DIGIT;
+        CHAR_CLASS['.'] = C_DOT;
+        CHAR_CLASS[' '] = CHAR_CLASS['\t'] = CHAR_CLASS['\r'] = CHAR_CLASS['\n'] = C_SPACE;
+        CHAR_CLASS['{'] = C_COMMENT;
+        for (char c : OPERATOR_START_CHARS) CHAR_CLASS[c] = C_OPERATOR;
+        for (char c : new char[]{'(', ')', ',', ':', ';'}) CHAR_CLASS[c] = C_DELIMITER;
+        CHAR_CLASS['\0'] = C_END;
+
+        int nodes = 1;
+        for (Map.Entry<String, TokenType> entry : OPERATORS.entrySet()) {
+            int node = 0;
+            for (char c : entry.getKey().toCharArray()) {
+                int edge = node * 128 + foldCase(c);
+                if (OPERATOR_NEXT[edge] == 0) OPERATOR_NEXT[edge] = (byte) nodes++;
+                node = OPERATOR_NEXT[edge];
+            }
+            OPERATOR_ACCEPT[node] = entry.getValue();
+        }
+    }
+
+    private static int charClass(char c) {
+        return c < 128 ? CHAR_CLASS[c] : C_OTHER;
+    }
+
+    //Приводит латинскую букву к нижнему регистру без обращения к Locale
+    private static char foldCase(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
     //Набор состояний
     private enum State {
         START,
@@ -71,21 +202,65 @@ public class Lexer {
     }
     //Конструктор
     public Lexer(String input) {
+        this(CharSource.of(input));
+    }
+    //Потоковый режим: текст читается через буфер фиксированного размера,
+    //лексемы забираются по одной через nextToken()
+    public Lexer(Reader reader) {
+        this(reader, CharSource.DEFAULT_BUFFER_SIZE);
+    }
+    public Lexer(Reader reader, int bufferSize) {
+        this(CharSource.of(reader, bufferSize));
+    }
+    //Потоковый режим над каналом байтов в кодировке UTF-8
+    public Lexer(ReadableByteChannel channel) {
+        this(channel, CharSource.DEFAULT_BUFFER_SIZE);
+    }
+    public Lexer(ReadableByteChannel channel, int bufferSize) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8), bufferSize);
+    }
+    public Lexer(CharSource input) {
+        this(input, new IdentifierTable());
+    }
+    private Lexer(CharSource input, IdentifierTable identifierTable) {
         this.input = input;
+        this.lazyValues = input.retainsText();
+        this.byteColumns = input.isByteEncoded();
+        this.lexemeTable = new LexemeTable(input);
+        this.identifierTable = identifierTable;
+    }
+    //Лексер участка [start, end) общего источника для параллельного разбора (см. ParallelLexer).
+    //Строки считаются от 1 с начала участка; inComment — участок начинается внутри комментария.
+    Lexer(CharSource input, int start, int end, boolean inComment) {
+        this(input.limit(end));
+        this.pos = start;
+        this.chunkEnd = end;
+        if (inComment) skipCommentBody();
+    }
+    //Лексер, продолжающий разбор с начала лексемы (start, line, col) в общую таблицу идентификаторов (см. edit)
+    private Lexer(CharSource input, int start, int line, int col, IdentifierTable identifierTable) {
+        this(input, identifierTable);
+        this.pos = start;
+        this.line = line;
+        this.col = col;
+    }
+    //Лексер над отображённым в память файлом: лексемы хранят смещение и длину в отображении
+    public static Lexer mapFile(Path path) throws IOException {
+        return new Lexer(CharSource.map(path));
     }
     //Возвращает текущий символ (без продвижения позиции
     private char peek() {
-        if (pos >= input.length()) return '\0';
         return input.charAt(pos);
     }
     //Возвращает текущий символ и сдвигает позицию вперёд
     private char next() {
-        if (pos >= input.length()) return '\0';
-        char ch = input.charAt(pos++);
+        char ch = input.charAt(pos);
+        if (ch == '\0') return ch;
+        pos++;
         if (ch == '\n') {
             line++;
             col = 1;
-        } else {
+        } else if (!byteColumns || (ch & 0xC0) != 0x80) { // продолжение символа UTF-8 не занимает колонку
             col++;
         }
         return ch;
@@ -93,74 +268,99 @@ public class Lexer {
     //Пропускает пробелы, табы, переводы строк и комментарии { ... }
     private void skipWhitespace() {
         while (true) {
-            char c = peek();
-            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+            input.release(pos);
+            int cls = charClass(peek());
+            if (cls == C_SPACE) {
                 next();
-            } else if (c == '{') {
+            } else if (cls == C_COMMENT) {
                 skipComment();
             } else {
                 break;
             }
         }
     }
-    //Пропускает символы до закрывающей фигурной скобки }. Бросает исключение, если комментарий не закрыт.
+    //Пропускает символы до закрывающей фигурной скобки }. Бросает исключение, если комментарий не закрыт
+    //(в режиме восстановления — сообщает о начале комментария и доходит до конца входа).
     private void skipComment() {
+        int start = pos;
+        int startLine = line;
+        int startCol = col;
         next(); // пропускаем '{'
+        if (skipCommentBody()) return;
+        if (!recovery) throw new RuntimeException("Unterminated comment at line " + line + ", col " + col);
+        diagnostics.report(Diagnostic.Kind.UNTERMINATED_COMMENT, start, startLine, startCol, "Unterminated comment");
+    }
+    //Пропускает тело комментария вместе с '}'. Возвращает false, если вход закончился раньше.
+    //На конце участка параллельного разбора комментарий может продолжаться в следующем участке, это не ошибка.
+    private boolean skipCommentBody() {
         while (true) {
+            input.release(pos);
             char c = peek();
             if (c == '\0') {
-                throw new RuntimeException("Unterminated comment at line " + line + ", col " + col);
+                return pos == chunkEnd;
             }
             if (c == '}') {
                 next(); // пропускаем '}'
-                break;
+                return true;
             } else {
                 next();
             }
         }
     }
-    //Проверяют, является ли символ буквой
-    private boolean isLetter(char c) {
-        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    //Создаёт лексему над диапазоном [tokenStart, pos). Потоковый источник не хранит текст,
+    //поэтому для него значение строится сразу.
+    private Token token(TokenType type) {
+        if (lazyValues) {
+            return new Token(type, input, tokenStart, pos - tokenStart, tokenLine, tokenCol, tokenId);
+        }
+        return new Token(type, input.text(tokenStart, pos), tokenLine, tokenCol, tokenId);
     }
     //Проверяют, является ли символ цифрой
     private boolean isDigit(char c) {
-        return (c >= '0' && c <= '9');
+        return charClass(c) == C_DIGIT;
     }
 
     //Считывает идентификатор (или ключевое слово) из букв и цифр.
-    //Возвращает токен типа IDENTIFIER если не найден в KEYWORDS или соответствующий ключевому слову
-    private Token readIdentifierOrKeyword() {
-        int startLine = line;
-        int startCol = col;
-        StringBuilder sb = new StringBuilder();
-        sb.append(next()); // первая буква
+    //Возвращает IDENTIFIER если слово не найдено в KEYWORDS или тип соответствующего ключевого слова
+    //Попутно считает хеш слова для таблицы идентификаторов (wordHash).
+    private TokenType readIdentifierOrKeyword() {
+        int hash = next(); // первая буква
 
         while (true) {
             char c = peek();
-            if (isLetter(c) || isDigit(c)) {
-                sb.append(next());
+            int cls = charClass(c);
+            if (cls == C_LETTER || cls == C_DIGIT) {
+                hash = 31 * hash + c;
+                next();
             } else {
                 break;
             }
         }
+        wordHash = hash;
 
-        String word = sb.toString();
-        TokenType type = KEYWORDS.getOrDefault(word.toLowerCase(), TokenType.IDENTIFIER);
-        return new Token(type, word, startLine, startCol);
+        return lookupKeyword(tokenStart, pos - tokenStart);
+    }
+    //Ищет слово [start, start + length) входа среди ключевых слов без учёта регистра, ничего не выделяя
+    private TokenType lookupKeyword(int start, int length) {
+        if (length < KEYWORD_MIN_LENGTH || length > KEYWORD_MAX_LENGTH) return TokenType.IDENTIFIER;
+        char first = foldCase(input.charAt(start));
+        char second = foldCase(input.charAt(start + Math.min(1, length - 1)));
+        char last = foldCase(input.charAt(start + length - 1));
+        int h = keywordHash(first, second, last, length, KEYWORD_MULTIPLIER, KEYWORD_TEXT.length - 1);
+        char[] keyword = KEYWORD_TEXT[h];
+        if (keyword == null || keyword.length != length) return TokenType.IDENTIFIER;
+        for (int i = 0; i < length; i++) {
+            if (foldCase(input.charAt(start + i)) != keyword[i]) return TokenType.IDENTIFIER;
+        }
+        return KEYWORD_TYPE[h];
     }
     //Возвращает следующий символ после текущего, не сдвигая позицию
     private char peekNext() {
-        if (pos + 1 >= input.length()) return '\0';
         return input.charAt(pos + 1);
     }
     //Считывает целое или вещественное число
     //Возвращает TokenType.INTEGER или TokenType.FLOAT
-    private Token readNumber() {
-        int startLine = line;
-        int startCol = col;
-        StringBuilder sb = new StringBuilder();
-
+    private TokenType readNumber() {
         boolean hasDot = false;
         boolean hasExp = false;
 
@@ -170,22 +370,22 @@ public class Lexer {
         if (first == '.' && !isDigit(peekNext())) {
             // Не число — это отдельный символ '.'
             next(); // продвигаемся вперёд
-            return new Token(TokenType.DOT, ".", startLine, startCol);
+            return TokenType.DOT;
         }
 
         while (true) {
             char c = peek();
             if (isDigit(c)) {
-                sb.append(next());
+                next();
             } else if (c == '.' && !hasDot) {
                 hasDot = true;
-                sb.append(next());
+                next();
             } else if ((c == 'E' || c == 'e') && !hasExp) {
                 hasExp = true;
-                sb.append(next());
+                next();
                 char sign = peek();
                 if (sign == '+' || sign == '-') {
-                    sb.append(next());
+                    next();
                 }
             } else {
                 break;
@@ -197,50 +397,75 @@ public class Lexer {
                 suffix == 'O' || suffix == 'o' ||
                 suffix == 'D' || suffix == 'd' ||
                 suffix == 'H' || suffix == 'h') {
-            sb.append(next());
-            return new Token(TokenType.INTEGER, sb.toString(), startLine, startCol);
+            next();
+            return decodeNumber(TokenType.INTEGER);
         } else if (hasDot || hasExp) {
-            return new Token(TokenType.FLOAT, sb.toString(), startLine, startCol);
+            return decodeNumber(TokenType.FLOAT);
         } else {
-            return new Token(TokenType.INTEGER, sb.toString(), startLine, startCol);
+            return decodeNumber(TokenType.INTEGER);
         }
     }
-
-    //Проверяет, начинается ли оператор с символа char c
-    private boolean isOperatorStart(char c) {
-        return OPERATOR_START_CHARS.contains(c);
+    //Режим восстановления: неизвестный символ или оператор становится лексемой UNKNOWN, незакрытый
+    //комментарий заканчивается на конце входа, а сообщения об этих ошибках (вид, смещение, строка, колонка)
+    //пишутся в getDiagnostics() вместо исключения. Один проход сообщает обо всех лексических ошибках.
+    public void setRecoveryMode(boolean recovery) {
+        this.recovery = recovery;
     }
-
-    //Пытается найти оператор длиной от 3 до 1 символа, начиная с текущей позиции.
-    //Если найден — возвращает соответствующий токен.
-    //Если неизвестный оператор — бросает ошибку.
-    private Token readOperator() {
-        int startLine = line;
-        int startCol = col;
-
-        // Максимум 3 символа
-        int maxLen = Math.min(3, input.length() - pos);
-
-        for (int len = maxLen; len > 0; len--) {
-            String op = input.substring(pos, pos + len);
-            String opLower = op.toLowerCase();
-            if (OPERATORS.containsKey(opLower)) {
-                for (int i = 0; i < len; i++) next();
-                return new Token(OPERATORS.get(opLower), op, startLine, startCol);
+    //Неизвестный символ: лексема UNKNOWN из одного символа — кодовой точки целиком
+    //(суррогатная пара или все байты UTF-8 при побайтовом источнике)
+    private TokenType unknownCharacter() {
+        char c = next();
+        if (byteColumns) {
+            if (c >= 0xC0) {
+                while ((peek() & 0xC0) == 0x80) next();
             }
+        } else if (Character.isHighSurrogate(c) && Character.isLowSurrogate(peek())) {
+            next();
         }
-
-        char c = next();
-        String op = String.valueOf(c);
-        if (OPERATORS.containsKey(op)) {
-            return new Token(OPERATORS.get(op), op, startLine, startCol);
+        String text = input.text(tokenStart, pos);
+        diagnostics.report(Diagnostic.Kind.UNKNOWN_CHARACTER, tokenStart, tokenLine, tokenCol,
+                "Unknown character '" + text + "'");
+        return TokenType.UNKNOWN;
+    }
+    //Неизвестный оператор: лексема UNKNOWN из первого символа
+    private TokenType unknownOperator() {
+        next();
+        diagnostics.report(Diagnostic.Kind.UNKNOWN_OPERATOR, tokenStart, tokenLine, tokenCol,
+                "Unknown operator '" + input.text(tokenStart, pos) + "'");
+        return TokenType.UNKNOWN;
+    }
+    //Разбирает значение только что считанного литерала в tokenValue; ошибка в литерале попадает в диагностики
+    private TokenType decodeNumber(TokenType type) {
+        if (!number.decode(input, tokenStart, pos, type == TokenType.FLOAT)) {
+            String literal = input.text(tokenStart, pos);
+            String message = number.error == Diagnostic.Kind.INVALID_DIGIT ? "Invalid digit in number '" + literal + "'"
+                    : number.error == Diagnostic.Kind.NUMBER_OVERFLOW ? "Number out of range '" + literal + "'"
+                    : "Malformed number '" + literal + "'";
+            diagnostics.report(number.error, tokenStart, tokenLine, tokenCol, message);
         }
-
-        throw new RuntimeException("Unknown operator starting at line " + startLine + ", col " + startCol);
+        tokenValue = number.bits;
+        return type;
     }
 
-
-
+    //Ищет самый длинный оператор, начинающийся с текущей позиции, проходя по префиксному дереву.
+    //Если найден — сдвигает позицию за него и возвращает его тип, иначе возвращает null.
+    private TokenType readOperator() {
+        int node = 0;
+        int matchedLen = 0;
+        TokenType matched = null;
+        for (int len = 1; ; len++) {
+            char c = foldCase(input.charAt(pos + len - 1));
+            if (c >= 128 || c == '\0') break;
+            node = OPERATOR_NEXT[node * 128 + c];
+            if (node == 0) break;
+            if (OPERATOR_ACCEPT[node] != null) {
+                matched = OPERATOR_ACCEPT[node];
+                matchedLen = len;
+            }
+        }
+        for (int i = 0; i < matchedLen; i++) next();
+        return matched;
+    }
 
     //Преобразует символ (, ), ; и т.п. в соответствующий TokenType
     private TokenType mapSymbolToTokenType(char c) {
@@ -267,13 +492,190 @@ public class Lexer {
     public IdentifierTable getIdentifierTable() {
         return identifierTable;
     }
+    //Возвращает диагностики разбора (ошибки в числовых литералах, в режиме восстановления — все лексические ошибки)
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
     //Основной метод: полностью обходит входной текст, генерирует все токены и заполняет таблицы.
-
+    //Лексемы пишутся в таблицу напрямую, без создания объектов Token.
     public void tokenizeAll() {
+        while (true) {
+            TokenType type = scan();
+            lexemeTable.add(type, tokenStart, pos - tokenStart, tokenLine, tokenCol, tokenId, tokenValue);
+            if (type == TokenType.EOF) return;
+        }
+    }
+
+    //Параллельный вариант tokenizeAll(): вход режется на участки, которые разбираются на пуле потоков,
+    //а результаты сливаются в таблицы этого лексера. Лексемы, их номера идентификаторов и ошибки
+    //совпадают с последовательным разбором. Для потокового источника разбор идёт последовательно.
+    public void tokenizeAll(ForkJoinPool pool) {
+        if (pos != 0 || lexemeTable.size() != 0) {
+            throw new IllegalStateException("Lexer has already been used");
+        }
+        if (!ParallelLexer.tokenize(input, lexemeTable, identifierTable, diagnostics, recovery, pool)) {
+            tokenizeAll();
+        }
+    }
+
+    //Применяет правку текста к уже разобранному входу: removedLength символов с offset заменяются на inserted.
+    //Разбор перезапускается с последней лексемы, которая заканчивается до правки (лексер заглядывает
+    //не дальше одного символа за конец лексемы), и останавливается, как только новая лексема за правкой
+    //начинается там же, где начиналась одна из старых: дальше текст и состояние разбора совпадают.
+    //Так обрабатываются и комментарии: после вставленной '{' совпадение наступит только за её '}'.
+    //Остальные лексемы не переразбираются, у них сдвигаются смещения и строки, а колонки — только на
+    //строке совпадения. Новые имена добавляются в таблицу идентификаторов, номера старых не меняются.
+    //Диагностики переразобранного участка заменяются новыми, остальные сдвигаются вместе с лексемами.
+    //Если новый текст содержит ошибку, исключение выбрасывается до изменения таблицы лексем.
+    //Нужен строковый источник и полностью разобранный вход (tokenizeAll()).
+    //Возвращает заменённый диапазон лексем (для Parser.reparse()).
+    public TokenEdit edit(int offset, int removedLength, String inserted) {
+        int size = lexemeTable.size();
+        if (size == 0 || lexemeTable.type(size - 1) != TokenType.EOF) {
+            throw new IllegalStateException("Input has not been tokenized");
+        }
+        CharSource edited = input.edit(offset, removedLength, inserted);
+        int delta = inserted.length() - removedLength;
+        int editEnd = offset + inserted.length(); // конец вставки в новом тексте
+
+        int from = lexemeTable.indexAtOffset(offset) - 1;
+        if (from >= 0 && lexemeTable.offset(from) + lexemeTable.length(from) >= offset) from--;
+        Lexer lexer = from >= 0
+                ? new Lexer(edited, lexemeTable.offset(from), lexemeTable.line(from), lexemeTable.column(from), identifierTable)
+                : new Lexer(edited, 0, 1, 1, identifierTable);
+        lexer.recovery = recovery;
+        from = Math.max(from, 0);
+        int restart = lexer.pos;
+
+        LexemeTable fresh = lexer.lexemeTable;
+        int old = lexemeTable.indexAtOffset(offset + removedLength);
+        while (true) {
+            TokenType type = lexer.scan();
+            int start = lexer.tokenStart;
+            if (start >= editEnd) {
+                while (old < size && lexemeTable.offset(old) + delta < start) old++;
+                if (old < size && lexemeTable.offset(old) + delta == start) {
+                    lexer.diagnostics.removeFrom(start); // о лексеме совпадения уже сообщено в старых диагностиках
+                    break;
+                }
+            }
+            fresh.add(type, start, lexer.pos - start, lexer.tokenLine, lexer.tokenCol, lexer.tokenId, lexer.tokenValue);
+            if (type == TokenType.EOF) {
+                old = size;
+                break;
+            }
+        }
+
+        int lineDelta = 0;
+        int columnLine = 0;
+        int columnDelta = 0;
+        if (old < size) {
+            lineDelta = lexer.tokenLine - lexemeTable.line(old);
+            columnLine = lexemeTable.line(old);
+            columnDelta = lexer.tokenCol - lexemeTable.column(old);
+        }
+        int resync = old < size ? lexemeTable.offset(old) : Integer.MAX_VALUE;
+        diagnostics.splice(restart, resync, lexer.diagnostics, delta, lineDelta, columnLine, columnDelta);
+        lexemeTable.splice(from, old, fresh, edited, delta, lineDelta, columnLine, columnDelta);
+        input = edited;
+        return new TokenEdit(from, old - from, fresh.size());
+    }
+
+    //Разбирает участок в свои таблицы. EOF добавляется только для последнего участка.
+    void tokenizeChunk(boolean last) {
+        while (true) {
+            TokenType type = scan();
+            if (type == TokenType.EOF && !last) return;
+            lexemeTable.add(type, tokenStart, pos - tokenStart, tokenLine, tokenCol, tokenId, tokenValue);
+            if (type == TokenType.EOF) return;
+        }
+    }
+
+    //Последовательность лексем для Parser(TokenStream) в том же потоке: лексема считывается, когда парсер
+    //переходит к ней, и в таблицу лексем не попадает, так что память не растёт с длиной входа.
+    public TokenStream stream() {
+        return new DirectStream();
+    }
+
+    //То же, но лексер работает в отдельном потоке и передаёт лексемы через кольцевой буфер на capacity лексем.
+    //Ошибка лексера (и Error его потока) выбрасывается в потоке парсера, когда он доходит до места ошибки.
+    public TokenStream pipeline(int capacity) {
+        TokenRing ring = new TokenRing(input, capacity);
+        Thread thread = new Thread(() -> produce(ring), "lexer");
+        thread.setDaemon(true);
+        thread.start();
+        return ring;
+    }
+
+    private void produce(TokenRing ring) {
+        try {
+            while (true) {
+                TokenType type = scan();
+                if (!ring.put(type, tokenLine, tokenCol, tokenStart, pos - tokenStart)) return;
+                if (type == TokenType.EOF) return;
+            }
+        } catch (Throwable e) {
+            ring.fail(e);
+        }
+    }
+
+    //Текущая лексема — последняя считанная scan(); за EOF, как курсор таблицы, возвращает EOF с позицией -1:-1
+    private final class DirectStream implements TokenStream {
+        private TokenType type = scan();
+        private int index = 0;
+        private boolean pastEnd = false;
+
+        @Override
+        public TokenType type() {
+            return pastEnd ? TokenType.EOF : type;
+        }
+
+        @Override
+        public int line() {
+            return pastEnd ? -1 : tokenLine;
+        }
+
+        @Override
+        public int column() {
+            return pastEnd ? -1 : tokenCol;
+        }
+
+        @Override
+        public String text() {
+            return pastEnd ? "" : input.text(tokenStart, pos);
+        }
+
+        @Override
+        public int offset() {
+            return pastEnd ? -1 : tokenStart;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public void advance() {
+            index++;
+            if (type == TokenType.EOF) {
+                pastEnd = true;
+            } else {
+                type = scan();
+            }
+        }
+    }
+
+    //Возвращает следующую лексему, не сохраняя её в таблице лексем.
+    //Идентификаторы по-прежнему попадают в таблицу идентификаторов. После конца входа возвращает EOF.
+    public Token nextToken() {
+        return token(scan());
+    }
+
+    //Считывает одну лексему: возвращает её тип, начало запоминается в tokenStart/tokenLine/tokenCol,
+    //конец — текущая позиция pos.
+    private TokenType scan() {
         State state = State.START;
-        StringBuilder buffer = new StringBuilder();
-        int tokenStartLine = line;
-        int tokenStartCol = col;
 
         while (true) {
             skipWhitespace();
@@ -283,66 +685,52 @@ public class Lexer {
                 case START:
                     skipWhitespace();
                     c = peek();
-                    buffer.setLength(0);
-                    tokenStartLine = line;
-                    tokenStartCol = col;
-
-                    if (c == '\0') {
-                        lexemeTable.add(new Token(TokenType.EOF, "", line, col));
-                        return;
-                    } else if (isLetter(c)) {
-                        state = State.IDENTIFIER_OR_KEYWORD;
-                    } else if (isDigit(c) || c == '.') {
-                        state = State.NUMBER;
-                    }else if (c == '(' || c == ')' || c == ',' || c == ':' || c == ';') {
-                        Token token = new Token(mapSymbolToTokenType(c), String.valueOf(c), line, col);
-                        next();
-                        lexemeTable.add(token);
-                        state = State.START;
-                        continue;
-                    }else if (isOperatorStart(c)) {
-                        state = State.OPERATOR;
-                    } else {
-                        throw new RuntimeException("Unknown character '" + c + "' at line " + line + ", col " + col);
+                    tokenStart = pos;
+                    tokenLine = line;
+                    tokenCol = col;
+                    tokenId = 0;
+
+                    switch (charClass(c)) {
+                        case C_END:
+                            return TokenType.EOF;
+                        case C_LETTER:
+                            state = State.IDENTIFIER_OR_KEYWORD;
+                            break;
+                        case C_DIGIT:
+                        case C_DOT:
+                            state = State.NUMBER;
+                            break;
+                        case C_DELIMITER:
+                            next();
+                            return mapSymbolToTokenType(c);
+                        case C_OPERATOR:
+                            state = State.OPERATOR;
+                            break;
+                        default:
+                            if (!recovery) throw new RuntimeException("Unknown character '" + c + "' at line " + line + ", col " + col);
+                            return unknownCharacter();
                     }
                     break;
 
                 case IDENTIFIER_OR_KEYWORD:
-                    Token idOrKeyword = readIdentifierOrKeyword();
-                    lexemeTable.add(idOrKeyword);
-                    if (idOrKeyword.getType() == TokenType.IDENTIFIER)
-                        identifierTable.add(idOrKeyword.getValue());
-                    state = State.START;
-                    break;
+                    TokenType idOrKeyword = readIdentifierOrKeyword();
+                    if (idOrKeyword == TokenType.IDENTIFIER)
+                        tokenId = identifierTable.intern(input, tokenStart, pos - tokenStart, wordHash);
+                    return idOrKeyword;
 
 
                 case NUMBER:
-                    Token idNumber = readNumber();
-                    lexemeTable.add(idNumber);
-                    state = State.START;
-                    break;
+                    return readNumber();
 
                 case OPERATOR:
-                    int maxLen = Math.min(3, input.length() - pos);
-                    boolean matched = false;
-                    for (int len = maxLen; len > 0; len--) {
-                        String op = input.substring(pos, pos + len).toLowerCase();
-                       // System.out.println((op));
-                        if (OPERATORS.containsKey(op)) {
-
-                            for (int i = 0; i < len; i++) buffer.append(next());
-                            lexemeTable.add(new Token(OPERATORS.get(op), buffer.toString(), tokenStartLine, tokenStartCol));
-                            matched = true;
-                            break;
-                        }
-                    }
-                    if (!matched) {
-                        //System.out.println("Unknown operator at line " + line + ", col " + col);
-                        printTables();
-                         throw new RuntimeException("Unknown operator at line " + line + ", col " + col);
+                    TokenType operator = readOperator();
+                    if (operator != null) {
+                        return operator;
                     }
-                    state = State.START;
-                    break;
+                    if (recovery) return unknownOperator();
+                    //System.out.println("Unknown operator at line " + line + ", col " + col);
+                    printTables();
+                    throw new RuntimeException("Unknown operator at line " + line + ", col " + col);
             }
         }
     }
@@ -0,0 +1,24 @@
+//Виды узлов синтаксического дерева (см. Ast). В скобках — лексема узла и дети по порядку.
+public enum NodeKind {
+    // Программа (имя программы): DECLARATIONS, BLOCK
+    PROGRAM,
+    // Раздел описаний (var или нет лексемы): DECLARATION...
+    DECLARATIONS,
+    // Описание (int | float | bool): VARIABLE...
+    DECLARATION,
+
+    // Операторы
+    BLOCK,   // begin: операторы...
+    ASSIGN,  // ass: VARIABLE, выражение
+    IF,      // if: условие, оператор then [, оператор else]
+    FOR,     // for: ASSIGN, выражение-граница, тело
+    WHILE,   // while: условие, тело
+    READ,    // read: VARIABLE...
+    WRITE,   // write: выражения...
+
+    // Выражения
+    BINARY,   // операция отношения, сложения или умножения: левый операнд, правый операнд
+    UNARY,    // not | -: операнд
+    VARIABLE, // идентификатор
+    LITERAL   // INTEGER | FLOAT | true | false
+}
@@ -0,0 +1,108 @@
+//Разбор значения числового литерала прямо по диапазону источника, без создания строк.
+//INTEGER — цифры с необязательным суффиксом основания B/O/D/H. Лексер пускает в такие литералы
+//десятичные цифры, 'e' (в шестнадцатеричных это цифра 14), точку и знак порядка: всё, что не является
+//цифрой основания, — ошибка. FLOAT — мантисса с точкой и/или порядком; точный быстрый путь для
+//мантиссы до 15 цифр и порядка до 22, остальное через Double.parseDouble.
+final class NumberLiteral {
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    //Результат последнего decode(): значение (для FLOAT — биты double, 0 при ошибке) и вид ошибки
+    long bits;
+    Diagnostic.Kind error;
+
+    //Разбирает литерал [start, end). Возвращает false, если в литерале ошибка (вид — в error)
+    boolean decode(CharSource source, int start, int end, boolean isFloat) {
+        bits = 0;
+        error = null;
+        return isFloat ? decodeFloat(source, start, end) : decodeInteger(source, start, end);
+    }
+
+    private boolean decodeInteger(CharSource source, int start, int end) {
+        int radix = 10;
+        int digitsEnd = end;
+        switch (source.charAt(end - 1)) {
+            case 'B': case 'b': radix = 2; digitsEnd--; break;
+            case 'O': case 'o': radix = 8; digitsEnd--; break;
+            case 'D': case 'd': radix = 10; digitsEnd--; break;
+            case 'H': case 'h': radix = 16; digitsEnd--; break;
+        }
+        long value = 0;
+        for (int i = start; i < digitsEnd; i++) {
+            char c = source.charAt(i);
+            int digit = c >= '0' && c <= '9' ? c - '0' : (c == 'e' || c == 'E') ? 14 : Integer.MAX_VALUE;
+            if (digit >= radix) return fail(Diagnostic.Kind.INVALID_DIGIT);
+            if (value > (Long.MAX_VALUE - digit) / radix) return fail(Diagnostic.Kind.NUMBER_OVERFLOW);
+            value = value * radix + digit;
+        }
+        bits = value;
+        return true;
+    }
+
+    private boolean decodeFloat(CharSource source, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;     // значащие цифры мантиссы
+        int scale = 0;      // десятичный порядок, набранный цифрами после точки
+        boolean afterDot = false;
+        boolean exact = true;
+        int i = start;
+        for (; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                afterDot = true;
+            } else if (c >= '0' && c <= '9') {
+                if (mantissa == 0 && c == '0') {
+                    if (afterDot) scale--;
+                } else if (digits < MAX_FAST_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (afterDot) scale--;
+                } else {
+                    exact = false;
+                }
+            } else {
+                break;
+            }
+        }
+        int exponent = 0;
+        if (i < end) { // 'e' или 'E'
+            i++;
+            boolean negative = false;
+            char sign = source.charAt(i);
+            if (sign == '+' || sign == '-') {
+                negative = sign == '-';
+                i++;
+            }
+            if (i == end) return fail(Diagnostic.Kind.MALFORMED_NUMBER);
+            for (; i < end; i++) {
+                char c = source.charAt(i);
+                if (c < '0' || c > '9') return fail(Diagnostic.Kind.MALFORMED_NUMBER); // точка после порядка: 1e5.3
+                if (exponent < 100_000) exponent = exponent * 10 + (c - '0');
+            }
+            if (negative) exponent = -exponent;
+        }
+        if (mantissa == 0 && exact) {
+            bits = Double.doubleToRawLongBits(0.0);
+            return true;
+        }
+        int power = scale + exponent;
+        if (exact && power >= -22 && power <= 22) {
+            double value = power >= 0 ? mantissa * POWERS_OF_TEN[power] : mantissa / POWERS_OF_TEN[-power];
+            bits = Double.doubleToRawLongBits(value);
+            return true;
+        }
+        double value = Double.parseDouble(source.text(start, end));
+        if (Double.isInfinite(value)) return fail(Diagnostic.Kind.NUMBER_OVERFLOW);
+        bits = Double.doubleToRawLongBits(value);
+        return true;
+    }
+
+    private boolean fail(Diagnostic.Kind kind) {
+        bits = 0;
+        error = kind;
+        return false;
+    }
+}
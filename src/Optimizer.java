@@ -0,0 +1,656 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+//Оптимизация проверенной программы (Ast после SemanticChecker без ошибок) перед переводом в IrProgram.
+//Дерево не меняется: проходы помечают узлы, а IrBuilder.build(ast, checker, optimizer) следует пометкам —
+//постоянное выражение выдаётся одной командой PUSH, удалённый оператор не выдаётся, вынесенное из цикла
+//выражение вычисляется в служебную ячейку перед циклом и читается из неё. Проходы выбираются по одному:
+//  FOLD — свёртка операций над константами (значения литералов с B/O/D/H уже декодированы лексером);
+//  PROPAGATE — подстановка известных значений переменных: вперёд по программе, после if значения ветвей
+//    сливаются, в цикле неизвестны переменные, которым в нём присваивается значение;
+//  DEAD_CODE — ветви if и циклы while с постоянным условием, циклы for с постоянным пустым диапазоном;
+//  DEAD_STORES — присваивания, значение которых не читается до следующего присваивания или до конца
+//    программы (живость назад по программе; читаемое где-либо в цикле живо во всём цикле);
+//  HOIST — вынос из условия и тела while и из тела for наибольших выражений, переменным которых в цикле
+//    не присваивается значение; выражение, инвариантное и во внешнем цикле, выносится из внешнего.
+//Выражение, которое может завершиться ошибкой (целое деление не на постоянный ненулевой делитель), не
+//сворачивается, не выносится и не удаляется вместе с присваиванием, так что ошибка остаётся на месте.
+//Операторы обходятся рекурсивно, как их разбирает Parser, выражения — Ast.walk без рекурсии.
+public class Optimizer {
+    public enum Pass {
+        FOLD,
+        PROPAGATE,
+        DEAD_CODE,
+        DEAD_STORES,
+        HOIST
+    }
+
+    //Пометки узлов
+    private static final byte CONSTANT = 1;
+    private static final byte REMOVED = 2;
+    private static final byte HOISTED = 3;
+
+    private final Ast ast;
+    private final LexemeTable table;
+    private final SemanticChecker types;
+    private final Set<Pass> passes;
+    private final byte[] marks;
+    //Значение постоянного выражения (как в IrProgram: int, float — биты double, bool — 0 или 1)
+    private final long[] values;
+    //Вынесенные выражения каждого цикла списком: первое — по узлу цикла, следующее — по узлу выражения
+    private final int[] firstHoisted;
+    private final int[] nextHoisted;
+    //Тип и известное значение каждой переменной по номеру идентификатора
+    private ValueType[] variableTypes = new ValueType[0];
+    private long[] env = new long[0];
+    private boolean[] known = new boolean[0];
+    //Живые переменные при обходе назад
+    private BitSet live = new BitSet();
+    private int folded = 0;
+    private int propagated = 0;
+    private int deadBranches = 0;
+    private int deadStores = 0;
+    private int hoisted = 0;
+
+    public Optimizer(Ast ast, SemanticChecker checker) {
+        this(ast, checker, EnumSet.allOf(Pass.class));
+    }
+
+    public Optimizer(Ast ast, SemanticChecker checker, Set<Pass> passes) {
+        if (ast.root() == -1) {
+            throw new IllegalStateException("No program to optimize");
+        }
+        if (!checker.getDiagnostics().isEmpty()) {
+            throw new IllegalArgumentException("Program has semantic errors");
+        }
+        this.ast = ast;
+        this.table = ast.getTable();
+        this.types = checker;
+        this.passes = passes.isEmpty() ? EnumSet.noneOf(Pass.class) : EnumSet.copyOf(passes);
+        this.marks = new byte[ast.size()];
+        this.values = new long[ast.size()];
+        this.firstHoisted = new int[ast.size()];
+        this.nextHoisted = new int[ast.size()];
+    }
+
+    //Проходы по списку имён через запятую (fold,propagate,...) или all
+    public static Set<Pass> parsePasses(String list) {
+        if (list.equalsIgnoreCase("all")) return EnumSet.allOf(Pass.class);
+        Set<Pass> passes = EnumSet.noneOf(Pass.class);
+        for (String name : list.split(",")) {
+            if (!name.isBlank()) passes.add(Pass.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        return passes;
+    }
+
+    //Выполняет выбранные проходы; пометки читает IrBuilder
+    public Optimizer run() {
+        Arrays.fill(firstHoisted, -1);
+        declareVariables();
+        int body = ast.child(ast.root(), 1);
+        if (passes.contains(Pass.FOLD) || passes.contains(Pass.PROPAGATE) || passes.contains(Pass.DEAD_CODE)) {
+            forward(body);
+        }
+        if (passes.contains(Pass.DEAD_STORES)) {
+            live = new BitSet();
+            backward(body);
+        }
+        if (passes.contains(Pass.HOIST)) hoist(body);
+        return this;
+    }
+
+    public boolean isConstant(int node) {
+        return marks[node] == CONSTANT;
+    }
+
+    //Значение постоянного выражения node
+    public long constantValue(int node) {
+        return values[node];
+    }
+
+    public boolean isRemoved(int node) {
+        return marks[node] == REMOVED;
+    }
+
+    public boolean isHoisted(int node) {
+        return marks[node] == HOISTED;
+    }
+
+    //Первое выражение, вынесенное из цикла loop, и следующее за hoisted (-1 — больше нет)
+    public int firstHoisted(int loop) {
+        return firstHoisted[loop];
+    }
+
+    public int nextHoisted(int hoisted) {
+        return nextHoisted[hoisted];
+    }
+
+    //Число узлов, по которым строится код: без удалённых, постоянное выражение — один узел
+    public int nodeCount() {
+        int[] count = new int[1];
+        ast.walk(new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                if (marks[node] == REMOVED) return false;
+                count[0]++;
+                return marks[node] != CONSTANT;
+            }
+        });
+        return count[0];
+    }
+
+    //Сводка проходов; before и after — код той же программы без оптимизации и с ней
+    public void printStatistics(IrProgram before, IrProgram after) {
+        System.out.println("Оптимизация " + passes + ":");
+        System.out.printf("  свёрнуто операций: %d, подставлено значений переменных: %d%n", folded, propagated);
+        System.out.printf("  удалено ветвей и проверок: %d, присваиваний: %d, вынесено из циклов выражений: %d%n",
+                deadBranches, deadStores, hoisted);
+        System.out.printf("  узлов: %d -> %d, команд: %d -> %d%n", ast.subtreeSize(ast.root()), nodeCount(),
+                before.instructionCount(), after.instructionCount());
+    }
+
+    private void declareVariables() {
+        int declarations = ast.firstChild(ast.root());
+        for (int declaration = ast.firstChild(declarations); declaration != -1; declaration = ast.nextSibling(declaration)) {
+            for (int variable = ast.firstChild(declaration); variable != -1; variable = ast.nextSibling(variable)) {
+                int id = id(variable);
+                if (id >= variableTypes.length) {
+                    int capacity = Math.max(id + 1, variableTypes.length * 2);
+                    variableTypes = Arrays.copyOf(variableTypes, capacity);
+                    env = new long[capacity];
+                    known = new boolean[capacity];
+                }
+                variableTypes[id] = types.getSymbolTable().type(id);
+            }
+        }
+    }
+
+    //Свёртка и распространение констант вперёд по оператору node
+    private void forward(int node) {
+        switch (ast.kind(node)) {
+            case BLOCK:
+                for (int child = ast.firstChild(node); child != -1; child = ast.nextSibling(child)) {
+                    forward(child);
+                }
+                break;
+            case ASSIGN: {
+                int variable = ast.firstChild(node);
+                int value = ast.nextSibling(variable);
+                evaluate(value);
+                int id = id(variable);
+                known[id] = passes.contains(Pass.PROPAGATE) && marks[value] == CONSTANT;
+                if (known[id]) env[id] = convert(values[value], types.typeOf(value), variableTypes[id]);
+                break;
+            }
+            case READ:
+                for (int variable = ast.firstChild(node); variable != -1; variable = ast.nextSibling(variable)) {
+                    known[id(variable)] = false;
+                }
+                break;
+            case WRITE:
+                for (int value = ast.firstChild(node); value != -1; value = ast.nextSibling(value)) {
+                    evaluate(value);
+                }
+                break;
+            case IF:
+                forwardIf(node);
+                break;
+            case WHILE:
+                forwardWhile(node);
+                break;
+            case FOR:
+                forwardFor(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void forwardIf(int node) {
+        int condition = ast.firstChild(node);
+        int then = ast.nextSibling(condition);
+        int otherwise = ast.nextSibling(then);
+        evaluate(condition);
+        if (marks[condition] == CONSTANT) {
+            boolean taken = values[condition] != 0;
+            if (passes.contains(Pass.DEAD_CODE)) {
+                marks[condition] = REMOVED;
+                remove(taken ? otherwise : then);
+                deadBranches++;
+            }
+            int branch = taken ? then : otherwise;
+            if (branch != -1) forward(branch);
+            return;
+        }
+        boolean[] savedKnown = known.clone();
+        long[] savedEnv = env.clone();
+        forward(then);
+        boolean[] thenKnown = known;
+        long[] thenEnv = env;
+        known = savedKnown;
+        env = savedEnv;
+        if (otherwise != -1) forward(otherwise);
+        for (int id = 0; id < known.length; id++) {
+            known[id] = known[id] && thenKnown[id] && env[id] == thenEnv[id];
+        }
+    }
+
+    private void forwardWhile(int node) {
+        int condition = ast.firstChild(node);
+        int body = ast.nextSibling(condition);
+        boolean[] savedKnown = known.clone();
+        long[] savedEnv = env.clone();
+        kill(assigned(body));
+        evaluate(condition);
+        if (marks[condition] == CONSTANT && values[condition] == 0) {
+            // цикл не выполняется ни разу
+            known = savedKnown;
+            env = savedEnv;
+            if (passes.contains(Pass.DEAD_CODE)) {
+                marks[node] = REMOVED;
+                deadBranches++;
+            }
+            return;
+        }
+        if (marks[condition] == CONSTANT && passes.contains(Pass.DEAD_CODE)) {
+            marks[condition] = REMOVED;
+            deadBranches++;
+        }
+        boolean[] loopKnown = known.clone();
+        long[] loopEnv = env.clone();
+        forward(body);
+        known = loopKnown;
+        env = loopEnv;
+    }
+
+    private void forwardFor(int node) {
+        int assign = ast.firstChild(node);
+        int limit = ast.nextSibling(assign);
+        int body = ast.nextSibling(limit);
+        forward(assign);
+        int id = id(ast.firstChild(assign));
+        evaluate(limit);
+        if (known[id] && marks[limit] == CONSTANT) {
+            long bound = convert(values[limit], types.typeOf(limit), variableTypes[id]);
+            boolean runs = variableTypes[id] == ValueType.INT ? env[id] <= bound : real(env[id]) <= real(bound);
+            if (!runs) {
+                // тело не выполняется ни разу, переменная цикла сохраняет начальное значение
+                if (passes.contains(Pass.DEAD_CODE)) {
+                    remove(limit);
+                    remove(body);
+                    deadBranches++;
+                }
+                return;
+            }
+        }
+        kill(assigned(body));
+        known[id] = false;
+        boolean[] loopKnown = known.clone();
+        long[] loopEnv = env.clone();
+        forward(body);
+        known = loopKnown;
+        env = loopEnv;
+    }
+
+    //Помечает постоянные узлы выражения expression
+    private void evaluate(int expression) {
+        ast.walk(expression, new AstVisitor() {
+            @Override
+            public void exit(Ast ast, int node) {
+                fold(node);
+            }
+        });
+    }
+
+    private void fold(int node) {
+        switch (ast.kind(node)) {
+            case LITERAL:
+                mark(node, IrBuilder.literalValue(table, ast.token(node)));
+                break;
+            case VARIABLE: {
+                int id = id(node);
+                if (passes.contains(Pass.PROPAGATE) && known[id]) {
+                    mark(node, env[id]);
+                    propagated++;
+                }
+                break;
+            }
+            case UNARY: {
+                int operand = ast.firstChild(node);
+                if (!passes.contains(Pass.FOLD) || marks[operand] != CONSTANT) break;
+                long value = values[operand];
+                if (ast.tokenType(node) == TokenType.NOT) value ^= 1;
+                else value = types.typeOf(node) == ValueType.FLOAT ? bits(-real(value)) : -value;
+                mark(node, value);
+                folded++;
+                break;
+            }
+            case BINARY:
+                if (passes.contains(Pass.FOLD)) foldBinary(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void foldBinary(int node) {
+        int left = ast.firstChild(node);
+        int right = ast.nextSibling(left);
+        if (marks[left] != CONSTANT || marks[right] != CONSTANT) return;
+        ValueType leftType = types.typeOf(left);
+        ValueType rightType = types.typeOf(right);
+        long a = values[left];
+        long b = values[right];
+        boolean floats = leftType == ValueType.FLOAT || rightType == ValueType.FLOAT;
+        double x = floats ? real(convert(a, leftType, ValueType.FLOAT)) : 0;
+        double y = floats ? real(convert(b, rightType, ValueType.FLOAT)) : 0;
+        long value;
+        switch (ast.tokenType(node)) {
+            case PLUS: value = floats ? bits(x + y) : a + b; break;
+            case MINUS: value = floats ? bits(x - y) : a - b; break;
+            case MUL: value = floats ? bits(x * y) : a * b; break;
+            case DIV:
+                if (!floats && b == 0) return; // деление на ноль остаётся ошибкой выполнения
+                value = floats ? bits(x / y) : a / b;
+                break;
+            case OR: value = a | b; break;
+            case AND: value = a & b; break;
+            case EQ: value = floats ? flag(x == y) : flag(a == b); break;
+            case NEQ: value = floats ? flag(x != y) : flag(a != b); break;
+            case LT: value = floats ? flag(x < y) : flag(a < b); break;
+            case LE: value = floats ? flag(x <= y) : flag(a <= b); break;
+            case GT: value = floats ? flag(x > y) : flag(a > b); break;
+            default: value = floats ? flag(x >= y) : flag(a >= b); break;
+        }
+        mark(node, value);
+        folded++;
+    }
+
+    //Удаление присваиваний, значение которых не читается: живость назад по оператору node
+    private void backward(int node) {
+        if (marks[node] == REMOVED) return;
+        switch (ast.kind(node)) {
+            case BLOCK: {
+                int[] statements = new int[ast.childCount(node)];
+                int count = 0;
+                for (int child = ast.firstChild(node); child != -1; child = ast.nextSibling(child)) {
+                    statements[count++] = child;
+                }
+                for (int i = count - 1; i >= 0; i--) {
+                    backward(statements[i]);
+                }
+                break;
+            }
+            case ASSIGN: {
+                int variable = ast.firstChild(node);
+                int value = ast.nextSibling(variable);
+                int id = id(variable);
+                if (!live.get(id) && !canFail(value)) {
+                    marks[node] = REMOVED;
+                    deadStores++;
+                } else {
+                    live.clear(id);
+                    uses(value, live);
+                }
+                break;
+            }
+            case READ:
+                for (int variable = ast.firstChild(node); variable != -1; variable = ast.nextSibling(variable)) {
+                    live.clear(id(variable));
+                }
+                break;
+            case WRITE:
+                uses(node, live);
+                break;
+            case IF: {
+                int condition = ast.firstChild(node);
+                int then = ast.nextSibling(condition);
+                int otherwise = ast.nextSibling(then);
+                if (marks[condition] == REMOVED) {
+                    int branch = marks[then] == REMOVED ? otherwise : then;
+                    if (branch != -1) backward(branch);
+                    break;
+                }
+                BitSet after = (BitSet) live.clone();
+                backward(then);
+                BitSet thenLive = live;
+                live = after;
+                if (otherwise != -1) backward(otherwise);
+                live.or(thenLive);
+                uses(condition, live);
+                break;
+            }
+            case WHILE: {
+                BitSet after = (BitSet) live.clone(); // цикл может не выполниться ни разу
+                BitSet loop = new BitSet();
+                uses(node, loop);
+                live.or(loop);
+                backward(ast.child(node, 1));
+                live.or(loop);
+                live.or(after);
+                break;
+            }
+            case FOR: {
+                int assign = ast.firstChild(node);
+                int limit = ast.nextSibling(assign);
+                int body = ast.nextSibling(limit);
+                if (marks[limit] != REMOVED) {
+                    // переменная цикла читается проверкой каждого прохода
+                    BitSet after = (BitSet) live.clone();
+                    BitSet loop = new BitSet();
+                    uses(body, loop);
+                    loop.set(id(ast.firstChild(assign)));
+                    live.or(loop);
+                    backward(body);
+                    live.or(loop);
+                    live.or(after);
+                    uses(limit, live);
+                }
+                backward(assign);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    //Вынос инвариантных выражений из циклов в операторе node, начиная с внешних
+    private void hoist(int node) {
+        if (marks[node] == REMOVED) return;
+        switch (ast.kind(node)) {
+            case BLOCK:
+                for (int child = ast.firstChild(node); child != -1; child = ast.nextSibling(child)) {
+                    hoist(child);
+                }
+                break;
+            case IF: {
+                int then = ast.child(node, 1);
+                hoist(then);
+                if (ast.nextSibling(then) != -1) hoist(ast.nextSibling(then));
+                break;
+            }
+            case WHILE: {
+                int condition = ast.firstChild(node);
+                hoistLoop(node, condition, ast.nextSibling(condition));
+                hoist(ast.nextSibling(condition));
+                break;
+            }
+            case FOR: {
+                int limit = ast.child(node, 1);
+                if (marks[limit] == REMOVED) break;
+                hoistLoop(node, -1, ast.nextSibling(limit));
+                hoist(ast.nextSibling(limit));
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    //Выносит из условия condition (-1 — нет) и тела body цикла loop наибольшие инвариантные выражения
+    private void hoistLoop(int loop, int condition, int body) {
+        BitSet assigned = assigned(loop);
+        BitSet variant = new BitSet();
+        AstVisitor findVariant = new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                return marks[node] == 0;
+            }
+
+            @Override
+            public void exit(Ast ast, int node) {
+                if (marks[node] == CONSTANT || marks[node] == HOISTED) return;
+                switch (ast.kind(node)) {
+                    case LITERAL:
+                        break;
+                    case VARIABLE:
+                        if (assigned.get(id(node))) variant.set(node);
+                        break;
+                    case UNARY:
+                    case BINARY:
+                        for (int child = ast.firstChild(node); child != -1; child = ast.nextSibling(child)) {
+                            if (variant.get(child)) variant.set(node);
+                        }
+                        if (mayFail(node)) variant.set(node);
+                        break;
+                    default:
+                        variant.set(node);
+                }
+            }
+        };
+        AstVisitor hoistInvariant = new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                if (marks[node] != 0) return false;
+                NodeKind kind = ast.kind(node);
+                if ((kind == NodeKind.BINARY || kind == NodeKind.UNARY) && !variant.get(node)) {
+                    marks[node] = HOISTED;
+                    nextHoisted[node] = firstHoisted[loop];
+                    firstHoisted[loop] = node;
+                    hoisted++;
+                    return false;
+                }
+                return true;
+            }
+        };
+        for (int root : new int[]{condition, body}) {
+            if (root == -1 || marks[root] == REMOVED) continue;
+            ast.walk(root, findVariant);
+            ast.walk(root, hoistInvariant);
+        }
+    }
+
+    //Переменные, которым присваивается значение в операторе node (удалённые операторы не считаются)
+    private BitSet assigned(int node) {
+        BitSet assigned = new BitSet();
+        ast.walk(node, new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                if (marks[node] == REMOVED) return false;
+                switch (ast.kind(node)) {
+                    case ASSIGN:
+                        assigned.set(id(ast.firstChild(node)));
+                        return false;
+                    case READ:
+                        for (int variable = ast.firstChild(node); variable != -1; variable = ast.nextSibling(variable)) {
+                            assigned.set(id(variable));
+                        }
+                        return false;
+                    case BINARY:
+                    case UNARY:
+                    case VARIABLE:
+                    case LITERAL:
+                        return false;
+                    default:
+                        return true;
+                }
+            }
+        });
+        return assigned;
+    }
+
+    //Добавляет в set переменные, значения которых читаются в node
+    private void uses(int node, BitSet set) {
+        ast.walk(node, new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                if (marks[node] == REMOVED || marks[node] == CONSTANT) return false;
+                switch (ast.kind(node)) {
+                    case VARIABLE:
+                        set.set(id(node));
+                        return false;
+                    case ASSIGN:
+                        uses(ast.child(node, 1), set); // без переменной слева
+                        return false;
+                    case READ:
+                        return false;
+                    default:
+                        return true;
+                }
+            }
+        });
+    }
+
+    //Выражение может завершиться ошибкой: в нём есть целое деление не на постоянный ненулевой делитель
+    private boolean canFail(int expression) {
+        boolean[] fails = new boolean[1];
+        ast.walk(expression, new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                if (marks[node] == CONSTANT || fails[0]) return false;
+                if (mayFail(node)) fails[0] = true;
+                return true;
+            }
+        });
+        return fails[0];
+    }
+
+    //Сама операция node может завершиться ошибкой
+    private boolean mayFail(int node) {
+        if (ast.kind(node) != NodeKind.BINARY || ast.tokenType(node) != TokenType.DIV
+                || types.typeOf(node) != ValueType.INT) {
+            return false;
+        }
+        int divisor = ast.child(node, 1);
+        return marks[divisor] != CONSTANT || values[divisor] == 0;
+    }
+
+    private void kill(BitSet variables) {
+        for (int id = variables.nextSetBit(0); id >= 0; id = variables.nextSetBit(id + 1)) {
+            known[id] = false;
+        }
+    }
+
+    private void remove(int node) {
+        if (node != -1) marks[node] = REMOVED;
+    }
+
+    private void mark(int node, long value) {
+        marks[node] = CONSTANT;
+        values[node] = value;
+    }
+
+    private int id(int variable) {
+        return table.identifierId(ast.token(variable));
+    }
+
+    //Значение типа from как значение типа to (int в float, остальное без изменений)
+    private static long convert(long value, ValueType from, ValueType to) {
+        return from == ValueType.INT && to == ValueType.FLOAT ? bits(value) : value;
+    }
+
+    private static long flag(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    private static double real(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+}
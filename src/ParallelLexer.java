@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//Параллельный лексический разбор большого входа на ForkJoinPool.
+//Вход режется на участки сразу после перевода строки, поэтому участок начинается с колонки 1
+//и граница никогда не попадает внутрь лексемы. Попасть она может только внутрь комментария { ... }:
+//предварительный просмотр прогоняет каждый участок сразу для двух начальных состояний
+//(вне комментария и внутри), после чего состояния на границах сшиваются по порядку.
+final class ParallelLexer {
+    //Участки меньше этого размера не стоят накладных расходов на задачу
+    static final int MIN_CHUNK = 1 << 16;
+    //Участков на поток: мелкие участки выравнивают нагрузку
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelLexer() {
+    }
+
+    //Результат просмотра участка
+    private static final class Scan {
+        int newlines;
+        boolean endsInCommentFromOutside; // состояние в конце, если участок начат вне комментария
+        boolean endsInCommentFromInside;  // то же, если участок начат внутри комментария
+        boolean hasNul;                   // '\0' в середине входа: последовательный лексер на нём остановится
+    }
+
+    //Разбирает source в table/identifiers (recovery — режим восстановления, см. Lexer.setRecoveryMode).
+    //Возвращает false, если вход нужно разобрать последовательно:
+    //он мал, не делится на участки, содержит '\0' или ошибку (ошибку тогда выдаст последовательный разбор).
+    static boolean tokenize(CharSource source, LexemeTable table, IdentifierTable identifiers,
+                            Diagnostics diagnostics, boolean recovery, ForkJoinPool pool) {
+        int length = source.length();
+        if (length < 2 * MIN_CHUNK || pool.getParallelism() < 2) return false;
+
+        int[] bounds = split(source, length, pool.getParallelism() * CHUNKS_PER_THREAD);
+        int chunks = bounds.length - 1;
+        if (chunks < 2) return false;
+
+        // 1. Предварительный просмотр участков
+        List<ForkJoinTask<Scan>> scanTasks = new ArrayList<>(chunks);
+        for (int k = 0; k < chunks; k++) {
+            int start = bounds[k];
+            int end = bounds[k + 1];
+            scanTasks.add(pool.submit(() -> scan(source, start, end)));
+        }
+        boolean[] startsInComment = new boolean[chunks];
+        int[] firstLine = new int[chunks];
+        boolean inComment = false;
+        int line = 1;
+        for (int k = 0; k < chunks; k++) {
+            Scan scan = scanTasks.get(k).join();
+            if (scan.hasNul) return false;
+            startsInComment[k] = inComment;
+            firstLine[k] = line;
+            inComment = inComment ? scan.endsInCommentFromInside : scan.endsInCommentFromOutside;
+            line += scan.newlines;
+        }
+        if (inComment) return false; // незакрытый комментарий
+
+        // 2. Разбор участков
+        List<ForkJoinTask<Lexer>> lexTasks = new ArrayList<>(chunks);
+        for (int k = 0; k < chunks; k++) {
+            int start = bounds[k];
+            int end = bounds[k + 1];
+            boolean comment = startsInComment[k];
+            boolean last = k == chunks - 1;
+            lexTasks.add(pool.submit(() -> {
+                try {
+                    Lexer lexer = new Lexer(source, start, end, comment);
+                    lexer.setRecoveryMode(recovery);
+                    lexer.tokenizeChunk(last);
+                    return lexer;
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            }));
+        }
+        Lexer[] parts = new Lexer[chunks];
+        for (int k = 0; k < chunks; k++) {
+            parts[k] = lexTasks.get(k).join();
+            if (parts[k] == null) return false;
+        }
+
+        // 3. Номера идентификаторов: участки по порядку, внутри участка — в порядке первого появления,
+        //    так что глобальные номера совпадают с последовательным разбором
+        int[][] idMaps = new int[chunks][];
+        int[] at = new int[chunks];
+        int[] literalAt = new int[chunks];
+        int total = 0;
+        int literals = table.literalCount();
+        for (int k = 0; k < chunks; k++) {
+            IdentifierTable local = parts[k].getIdentifierTable();
+            int[] map = new int[local.size() + 1];
+            for (int id = 1; id <= local.size(); id++) {
+                map[id] = identifiers.add(local.getName(id));
+            }
+            idMaps[k] = map;
+            at[k] = total;
+            total += parts[k].getLexemeTable().size();
+            literalAt[k] = literals;
+            literals += parts[k].getLexemeTable().literalCount();
+            diagnostics.addAll(parts[k].getDiagnostics(), firstLine[k] - 1);
+        }
+
+        // 4. Слияние таблиц лексем: каждый участок копируется на своё место параллельно
+        int base = table.size();
+        table.reserve(total, literals - table.literalCount());
+        List<ForkJoinTask<?>> copyTasks = new ArrayList<>(chunks);
+        for (int k = 0; k < chunks; k++) {
+            LexemeTable part = parts[k].getLexemeTable();
+            int to = base + at[k];
+            int literalTo = literalAt[k];
+            int lineDelta = firstLine[k] - 1;
+            int[] map = idMaps[k];
+            copyTasks.add(pool.submit(() -> table.copyFrom(part, to, literalTo, lineDelta, map)));
+        }
+        for (ForkJoinTask<?> task : copyTasks) {
+            task.join();
+        }
+        return true;
+    }
+
+    //Границы участков: примерно равные куски, каждая граница сдвинута за ближайший '\n'
+    private static int[] split(CharSource source, int length, int wanted) {
+        int chunkSize = Math.max(MIN_CHUNK, length / wanted);
+        int[] bounds = new int[length / chunkSize + 2];
+        int count = 0;
+        bounds[count++] = 0;
+        int next = chunkSize;
+        while (next < length) {
+            int p = next;
+            while (p < length && source.charAt(p) != '\n') p++;
+            if (p + 1 >= length) break;
+            bounds[count++] = p + 1;
+            next = p + 1 + chunkSize;
+        }
+        bounds[count++] = length;
+        int[] result = new int[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    private static Scan scan(CharSource source, int start, int end) {
+        Scan scan = new Scan();
+        boolean fromOutside = false;
+        boolean fromInside = true;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                scan.newlines++;
+            } else if (c == '{') {
+                fromOutside = true;
+                fromInside = true;
+            } else if (c == '}') {
+                fromOutside = false;
+                fromInside = false;
+            } else if (c == '\0') {
+                scan.hasNul = true;
+            }
+        }
+        scan.endsInCommentFromOutside = fromOutside;
+        scan.endsInCommentFromInside = fromInside;
+        return scan;
+    }
+}
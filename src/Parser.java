@@ -1,24 +1,117 @@
+import java.util.Arrays;
 import java.util.List;
 
 public class Parser {
-    private final List<Token> tokens;
-    private int pos = 0;
+    //Приоритеты бинарных операций по TokenType: 1 — отношения, 2 — сложения, 3 — умножения, 0 — не операция
+    private static final byte[] PRECEDENCE = new byte[TokenType.values().length];
+    //Вид записи на стеке операций: открывающая скобка, бинарная операция (её приоритет) или унарная
+    private static final byte PAREN = 0;
+    private static final byte UNARY = 4;
+    //Лексемы, на которых разбор продолжается после синтаксической ошибки: границы и начала операторов
+    private static final boolean[] SYNCHRONIZE = new boolean[TokenType.values().length];
+    //Раскрутка стека до ближайшего места восстановления. Без трассировки стека и общая для всех разборов:
+    //сообщение об ошибке к этому моменту уже записано в диагностику.
+    private static final SyntaxError SYNTAX_ERROR = new SyntaxError();
+
+    static {
+        for (TokenType type : new TokenType[]{TokenType.EQ, TokenType.NEQ, TokenType.LT, TokenType.LE, TokenType.GT, TokenType.GE}) {
+            PRECEDENCE[type.ordinal()] = 1;
+        }
+        for (TokenType type : new TokenType[]{TokenType.PLUS, TokenType.MINUS, TokenType.OR}) {
+            PRECEDENCE[type.ordinal()] = 2;
+        }
+        for (TokenType type : new TokenType[]{TokenType.MUL, TokenType.DIV, TokenType.AND}) {
+            PRECEDENCE[type.ordinal()] = 3;
+        }
+        for (TokenType type : new TokenType[]{TokenType.SEMICOLON, TokenType.END, TokenType.BEGIN, TokenType.IF,
+                TokenType.FOR, TokenType.WHILE, TokenType.READ, TokenType.WRITE, TokenType.EOF}) {
+            SYNCHRONIZE[type.ordinal()] = true;
+        }
+    }
+
+    private static final class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private TokenStream tokens;
+    //Синтаксическое дерево, которое строится по ходу разбора (null при разборе потока лексем)
+    private final Ast ast;
+    //Стеки разбора выражений: номера узлов-операндов, номера лексем операций и их вид
+    private int[] operands = new int[16];
+    private int operandTop = 0;
+    private int[] operatorTokens = new int[16];
+    private byte[] operatorKinds = new byte[16];
+    private int operatorTop = 0;
+    //Режим восстановления и найденные в нём ошибки
+    private boolean recovery = false;
+    private final Diagnostics diagnostics = new Diagnostics();
+    //Номер лексемы последней записанной ошибки: вторая ошибка на той же лексеме — её следствие
+    private int errorToken = -1;
+    //Последний оператор списка не разобран: разбор продолжен с границы после ошибки
+    private boolean statementFailed = false;
+    //Число узлов дерева, достижимых от корня; остальные остались от поддеревьев, заменённых reparse()
+    private int liveNodes = 0;
 
     public Parser(List<Token> tokens) {
+        this(LexemeTable.of(tokens));
+    }
+
+    //Разбирает упакованную таблицу лексем, не создавая объектов Token
+    public Parser(LexemeTable table) {
+        this.tokens = table.cursor();
+        this.ast = new Ast(table, table.size() + 1);
+    }
+
+    //Разбирает лексемы по мере их чтения (Lexer.stream() или Lexer.pipeline()). Дерево ссылается на
+    //номера лексем в таблице, поэтому здесь оно не строится: только проверка программы, память которой
+    //растёт с глубиной вложенности, а не с числом лексем.
+    public Parser(TokenStream tokens) {
         this.tokens = tokens;
+        this.ast = null;
+    }
+
+    //Возвращает дерево, построенное parseProgram() (null при разборе потока лексем)
+    public Ast getAst() {
+        return ast;
+    }
+
+    //Режим восстановления: синтаксическая ошибка записывается в getDiagnostics() вместо исключения,
+    //оператор с ошибкой пропускается до ближайшей границы (';', end, begin или начала следующего оператора)
+    //и разбор продолжается, так что один проход сообщает обо всех ошибках. Первая ошибка совпадает
+    //с исключением обычного режима; дерево программы с ошибками неполное.
+    public void setRecoveryMode(boolean recovery) {
+        this.recovery = recovery;
+    }
+
+    //Возвращает синтаксические ошибки, найденные в режиме восстановления
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    //Добавляет узел дерева (если оно строится) и возвращает его номер
+    private int node(NodeKind kind, int token, int firstChild) {
+        return ast != null ? ast.add(kind, token, firstChild, tokens.index() - 1) : -1;
+    }
+
+    //Делает next следующим братом node
+    private void link(int node, int next) {
+        if (ast != null) ast.setNextSibling(node, next);
     }
 
-    private Token peek() {
-        if (pos >= tokens.size()) return new Token(TokenType.EOF, "", -1, -1);
-        return tokens.get(pos);
+    private TokenType peek() {
+        return tokens.type();
     }
 
-    private Token next() {
-        return tokens.get(pos++);
+    private void next() {
+        tokens.advance();
     }
 
     private boolean match(TokenType expected) {
-        if (peek().getType() == expected) {
+        if (peek() == expected) {
             next();
             return true;
         }
@@ -26,217 +119,518 @@ public class Parser {
     }
 
     private boolean check(TokenType expected) {
-        return peek().getType() == expected;
+        return peek() == expected;
     }
 
     private void expect(TokenType expected) {
         if (!match(expected)) {
-            Token current = peek();
-            throw new RuntimeException("Ожидался " + expected + ", но найдено: " + current.getType() +
-                    " в строке " + current.getLine() + ", колонке " + current.getColumn());
+            error("Ожидался " + expected + ", но найдено: " + tokens.type());
         }
     }
 
+    //Как expect(), но возвращает номер принятой лексемы
+    private int expectToken(TokenType expected) {
+        int token = tokens.index();
+        expect(expected);
+        return token;
+    }
+
+    //Принимает идентификатор и возвращает узел VARIABLE
+    private int parseVariable() {
+        return node(NodeKind.VARIABLE, expectToken(TokenType.IDENTIFIER), -1);
+    }
+
     private void error(String msg) {
-        Token current = peek();
-        throw new RuntimeException(msg + " в строке " + current.getLine() + ", колонке " + current.getColumn());
+        if (!recovery) {
+            throw new RuntimeException(msg + " в строке " + tokens.line() + ", колонке " + tokens.column());
+        }
+        report(msg);
+        throw SYNTAX_ERROR;
+    }
+
+    //Записывает ошибку в режиме восстановления, если на этой лексеме ошибки ещё не было
+    private void report(String msg) {
+        if (tokens.index() == errorToken) return;
+        errorToken = tokens.index();
+        diagnostics.report(Diagnostic.Kind.SYNTAX_ERROR, tokens.offset(), tokens.line(), tokens.column(), msg);
+    }
+
+    //Пропускает лексемы до границы оператора
+    private void synchronize() {
+        while (!SYNCHRONIZE[peek().ordinal()]) next();
     }
 
     public void parseProgram() {
-        expect(TokenType.PROGRAM);
-        expect(TokenType.IDENTIFIER); // имя программы
-        match(TokenType.SEMICOLON);
-        match(TokenType.VAR);
-        parseDescription();
-        match(TokenType.SEMICOLON);
-        expect(TokenType.BEGIN);
-        parseCompoundOperator();
-        expect(TokenType.END);
-        expect(TokenType.DOT);
-        System.out.println("Программа успешно разобрана.");
+        parse();
+        if (diagnostics.isEmpty()) {
+            System.out.println("Программа успешно разобрана.");
+        } else {
+            System.out.println("Синтаксических ошибок: " + diagnostics.size());
+        }
+    }
+
+    //То же, что parseProgram(), но без сообщения об итоге (для пакетной проверки, см. BatchCompiler)
+    public void parse() {
+        try {
+            parseProgramBody();
+        } finally {
+            tokens.close();
+        }
+    }
+
+    private void parseProgramBody() {
+        int name = -1;
+        int declarations;
+        try {
+            expect(TokenType.PROGRAM);
+            name = expectToken(TokenType.IDENTIFIER); // имя программы
+            match(TokenType.SEMICOLON);
+            int var = check(TokenType.VAR) ? tokens.index() : -1;
+            match(TokenType.VAR);
+            declarations = node(NodeKind.DECLARATIONS, var, parseDescription());
+            match(TokenType.SEMICOLON);
+        } catch (SyntaxError e) {
+            // Ошибка в заголовке или описаниях: разбор продолжается с begin
+            while (!check(TokenType.BEGIN) && !check(TokenType.EOF)) next();
+            declarations = node(NodeKind.DECLARATIONS, -1, -1);
+        }
+        try {
+            int begin = expectToken(TokenType.BEGIN);
+            int body = node(NodeKind.BLOCK, begin, parseCompoundOperator());
+            link(declarations, body);
+            expect(TokenType.END);
+            expect(TokenType.DOT);
+        } catch (SyntaxError e) {
+            // Тело не закончено: после ошибки здесь продолжать разбор нечем
+        }
+        int program = node(NodeKind.PROGRAM, name, declarations);
+        if (ast != null) {
+            ast.setRoot(program);
+            liveNodes = ast.size();
+        }
+    }
+
+    //Инкрементальный переразбор после Lexer.edit() той же таблицы лексем: edit — заменённый диапазон лексем.
+    //Заново разбирается наименьший оператор, содержащий правку, и подставляется в дерево вместо старого,
+    //если новый оператор кончается перед той же лексемой, что и старый. Иначе (правка меняет границы
+    //операторов) в наименьшем объемлющем блоке begin ... end разбирается участок списка операторов —
+    //до старого оператора за правкой, с которого разбор снова совпадает, или до end блока. Остальные
+    //поддеревья не трогаются, у них только сдвигаются номера лексем. Дерево и ошибки — те же, что дал бы
+    //полный разбор; правки заголовка, описаний или end. программы, а также правки после разбора с ошибками
+    //разбирают программу заново целиком. Полный разбор делается и тогда, когда остатки заменённых поддеревьев
+    //занимают больше половины арены.
+    public void reparse(TokenEdit edit) {
+        if (ast == null) {
+            throw new IllegalStateException("Incremental reparse needs a lexeme table");
+        }
+        int from = edit.getFrom();
+        int oldTo = from + edit.getRemoved();
+        int delta = edit.getInserted() - edit.getRemoved();
+        int sizeBefore = ast.size();
+        errorToken = -1;
+        boolean done = false;
+        if (ast.root() >= 0 && diagnostics.isEmpty()) {
+            try {
+                done = reparseBlock(ast.nextSibling(ast.firstChild(ast.root())), from, oldTo, delta);
+            } catch (SyntaxError e) {
+                // Режим восстановления: все ошибки соберёт полный разбор
+            } catch (RuntimeException e) {
+                ast.setRoot(-1); // дерево больше не соответствует таблице: следующий reparse() разберёт всё заново
+                throw e;
+            }
+        }
+        if (done) {
+            if (delta != 0) ast.shiftTokens(sizeBefore, from, oldTo, delta);
+            if (ast.size() <= 2 * liveNodes) return;
+        }
+        tokens = ast.getTable().cursor();
+        ast.clear();
+        diagnostics.clear();
+        errorToken = -1;
+        parseProgramBody();
+    }
+
+    //Переразбирает правку [from, oldTo) внутри блока программы; false — правку им не ограничить.
+    //Номера лексем в дереве здесь ещё старые: до правки они совпадают с новыми, после — меньше на delta.
+    private boolean reparseBlock(int body, int from, int oldTo, int delta) {
+        if (ast.token(body) >= from || blockEnd(body) < oldTo) return false;
+        // Путь от блока программы к наименьшему оператору, содержащему правку: узел, родитель, предыдущий брат
+        int[] path = new int[8];
+        int[] parents = new int[8];
+        int[] previous = new int[8];
+        int depth = 0;
+        int parent = body;
+        while (true) {
+            int found = -1;
+            int prev = -1;
+            for (int child = ast.firstChild(parent); child != -1; prev = child, child = ast.nextSibling(child)) {
+                if (!isStatement(ast.kind(child))) continue;
+                if (statementStart(child) > from) break;
+                if (ast.lastToken(child) + 1 >= oldTo) {
+                    found = child;
+                    break;
+                }
+            }
+            if (found == -1) break;
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                parents = Arrays.copyOf(parents, depth * 2);
+                previous = Arrays.copyOf(previous, depth * 2);
+            }
+            path[depth] = found;
+            parents[depth] = parent;
+            previous[depth] = prev;
+            depth++;
+            parent = found;
+        }
+        for (int k = depth - 1; k >= 0; k--) {
+            int node = path[k];
+            boolean done = ast.kind(node) == NodeKind.BLOCK && ast.token(node) < from && blockEnd(node) >= oldTo
+                    ? reparseList(node, from, oldTo, delta)
+                    : reparseStatement(node, parents[k], previous[k], delta);
+            if (done) return true;
+        }
+        return reparseList(body, from, oldTo, delta);
     }
 
-    private void parseDescription() {
-        while (isType(peek().getType())) {
+    //Переразбирает оператор node; удаётся, если новый оператор кончается перед той же лексемой, что и старый
+    private boolean reparseStatement(int node, int parent, int prev, int delta) {
+        tokens = ast.getTable().cursor(statementStart(node));
+        int start = ast.size();
+        int fresh = parseOperator();
+        if (tokens.index() != ast.lastToken(node) + 1 + delta) return false;
+        link(fresh, ast.nextSibling(node));
+        replaceChild(parent, prev, fresh);
+        liveNodes += ast.size() - start - ast.subtreeSize(node);
+        return true;
+    }
+
+    //Переразбирает список операторов блока с последнего оператора, начатого не позже правки, до первого
+    //старого оператора за правкой, перед которым новый разбор оказался сразу после ';', или до end блока
+    private boolean reparseList(int block, int from, int oldTo, int delta) {
+        int prev = -1;
+        int first = ast.firstChild(block);
+        while (ast.nextSibling(first) != -1 && statementStart(ast.nextSibling(first)) <= from) {
+            prev = first;
+            first = ast.nextSibling(first);
+        }
+        tokens = ast.getTable().cursor(statementStart(first));
+        int start = ast.size();
+        int removed = 0;
+        int old = first; // первый старый оператор, который ещё может продолжить новый список
+        int head = -1;
+        int last = -1;
+        while (true) {
+            int operator = parseOperator();
+            if (head == -1) head = operator;
+            else link(last, operator);
+            last = operator;
+            if (match(TokenType.SEMICOLON) && !check(TokenType.END)) {
+                int position = tokens.index();
+                while (old != -1 && (statementStart(old) < oldTo || statementStart(old) + delta < position)) {
+                    removed += ast.subtreeSize(old);
+                    old = ast.nextSibling(old);
+                }
+                if (old == -1 || statementStart(old) + delta != position) continue;
+            } else {
+                if (!check(TokenType.END) || blockEnd(block) < oldTo || tokens.index() != blockEnd(block) + delta) {
+                    return false;
+                }
+                for (; old != -1; old = ast.nextSibling(old)) {
+                    removed += ast.subtreeSize(old);
+                }
+            }
+            link(last, old);
+            replaceChild(block, prev, head);
+            liveNodes += ast.size() - start - removed;
+            return true;
+        }
+    }
+
+    //Ставит node на место ребёнка parent, следующего за prev (-1 — на место первого ребёнка)
+    private void replaceChild(int parent, int prev, int node) {
+        if (prev == -1) ast.setFirstChild(parent, node);
+        else ast.setNextSibling(prev, node);
+    }
+
+    //Номер лексемы end, закрывающей блок (у блока программы его узел создаётся до end)
+    private int blockEnd(int block) {
+        return block == ast.nextSibling(ast.firstChild(ast.root())) ? ast.lastToken(ast.root()) - 1 : ast.lastToken(block);
+    }
+
+    //Первая лексема оператора: у присваивания — переменная, у остальных — лексема узла
+    private int statementStart(int node) {
+        return ast.kind(node) == NodeKind.ASSIGN ? ast.token(ast.firstChild(node)) : ast.token(node);
+    }
+
+    private static boolean isStatement(NodeKind kind) {
+        switch (kind) {
+            case ASSIGN:
+            case IF:
+            case FOR:
+            case WHILE:
+            case READ:
+            case WRITE:
+            case BLOCK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //Возвращает цепочку узлов DECLARATION (-1, если описаний нет)
+    private int parseDescription() {
+        int first = -1;
+        int last = -1;
+        while (isType(peek())) {
+            int type = tokens.index();
             parseType();
-            expect(TokenType.IDENTIFIER);
+            int firstVariable = parseVariable();
+            int lastVariable = firstVariable;
             while (match(TokenType.COMMA)) {
-                expect(TokenType.IDENTIFIER);
+                int variable = parseVariable();
+                link(lastVariable, variable);
+                lastVariable = variable;
             }
+            int declaration = node(NodeKind.DECLARATION, type, firstVariable);
+            if (first == -1) first = declaration;
+            else link(last, declaration);
+            last = declaration;
         }
+        return first;
     }
 
     private void parseType() {
         if (!(match(TokenType.INT) ||
                 match(TokenType.FLOAT_TYPE) ||
                 match(TokenType.BOOL))) {
-            error("Ожидался тип (int|float|bool), найдено: " + peek().getValue());
+            error("Ожидался тип (int|float|bool), найдено: " + tokens.text());
+        }
+    }
+
+    //Возвращает цепочку узлов операторов (в режиме восстановления — только разобранных без ошибок).
+    //Список заканчивается перед END; в режиме восстановления чужая лексема на месте ';' или END
+    //записывается как ошибка и разбор списка продолжается со следующей границы.
+    private int parseCompoundOperator() {
+        int first = -1;
+        int last = -1;
+        while (true) {
+            int operator = parseStatement();
+            if (operator != -1) {
+                if (first == -1) first = operator;
+                else link(last, operator);
+                last = operator;
+            }
+            if (match(TokenType.SEMICOLON)) {
+                if (check(TokenType.END)) break; // <- пропускаем ";" перед END
+                continue;
+            }
+            if (!recovery || check(TokenType.END) || check(TokenType.EOF)) break;
+            if (!statementFailed) {
+                report("Ожидался " + TokenType.END + ", но найдено: " + tokens.type());
+                synchronize();
+            }
+            if (match(TokenType.SEMICOLON) && check(TokenType.END)) break;
+            if (check(TokenType.END) || check(TokenType.EOF)) break;
         }
+        return first;
     }
 
-    private void parseCompoundOperator() {
-        parseOperator();
-        while (match(TokenType.SEMICOLON)) {
-            if (check(TokenType.END)) break; // <- пропускаем ";" перед END
-            parseOperator();
+    //Оператор списка; в режиме восстановления при ошибке пропускает его до границы и возвращает -1
+    private int parseStatement() {
+        if (!recovery) return parseOperator();
+        try {
+            int operator = parseOperator();
+            statementFailed = false;
+            return operator;
+        } catch (SyntaxError e) {
+            synchronize();
+            statementFailed = true;
+            return -1;
         }
     }
 
-    private void parseOperator() {
-        Token current = peek();
-        switch (current.getType()) {
+    private int parseOperator() {
+        TokenType current = peek();
+        switch (current) {
             case IDENTIFIER:
-                parseAssignment();
-                break;
+                return parseAssignment();
             case IF:
-                parseIf();
-                break;
+                return parseIf();
             case FOR:
-                parseFor();
-                break;
+                return parseFor();
             case WHILE:
-                parseWhile();
-                break;
+                return parseWhile();
             case READ:
-                parseRead();
-                break;
+                return parseRead();
             case WRITE:
-                parseWrite();
-                break;
+                return parseWrite();
             case BEGIN:
-                parseCompound();
-                break;
+                return parseCompound();
             default:
-                error("Ожидался оператор, найдено: " + current.getType());
+                error("Ожидался оператор, найдено: " + current);
+                return -1;
         }
     }
 
-    private void parseCompound() {
-        expect(TokenType.BEGIN);
-        parseCompoundOperator();
+    private int parseCompound() {
+        int begin = expectToken(TokenType.BEGIN);
+        int operators = parseCompoundOperator();
         expect(TokenType.END);
+        return node(NodeKind.BLOCK, begin, operators);
     }
 
-    private void parseAssignment() {
-        expect(TokenType.IDENTIFIER);
-        expect(TokenType.ASSIGN);
-        parseExpression();
+    private int parseAssignment() {
+        int variable = parseVariable();
+        int assign = expectToken(TokenType.ASSIGN);
+        link(variable, parseExpression());
+        return node(NodeKind.ASSIGN, assign, variable);
     }
 
-    private void parseIf() {
-        expect(TokenType.IF);
-        parseExpression();
+    private int parseIf() {
+        int token = expectToken(TokenType.IF);
+        int condition = parseExpression();
         expect(TokenType.THEN);
-        parseOperator();
+        int then = parseOperator();
+        link(condition, then);
         if (match(TokenType.ELSE)) {
-            parseOperator();
+            link(then, parseOperator());
         }
+        return node(NodeKind.IF, token, condition);
     }
 
-    private void parseFor() {
-        expect(TokenType.FOR);
-        parseAssignment();
+    private int parseFor() {
+        int token = expectToken(TokenType.FOR);
+        int assignment = parseAssignment();
         expect(TokenType.TO);
-        parseExpression();
+        int limit = parseExpression();
+        link(assignment, limit);
         expect(TokenType.DO);
-        parseOperator();
+        link(limit, parseOperator());
+        return node(NodeKind.FOR, token, assignment);
     }
 
-    private void parseWhile() {
-        expect(TokenType.WHILE);
-        parseExpression();
+    private int parseWhile() {
+        int token = expectToken(TokenType.WHILE);
+        int condition = parseExpression();
         expect(TokenType.DO);
-        parseOperator();
+        link(condition, parseOperator());
+        return node(NodeKind.WHILE, token, condition);
     }
 
-    private void parseRead() {
-        expect(TokenType.READ);
+    private int parseRead() {
+        int token = expectToken(TokenType.READ);
         expect(TokenType.LPAREN);
-        expect(TokenType.IDENTIFIER);
+        int first = parseVariable();
+        int last = first;
         while (match(TokenType.COMMA)) {
-            expect(TokenType.IDENTIFIER);
+            int variable = parseVariable();
+            link(last, variable);
+            last = variable;
         }
         expect(TokenType.RPAREN);
+        return node(NodeKind.READ, token, first);
     }
 
-    private void parseWrite() {
-        expect(TokenType.WRITE);
+    private int parseWrite() {
+        int token = expectToken(TokenType.WRITE);
         expect(TokenType.LPAREN);
-        parseExpression();
+        int first = parseExpression();
+        int last = first;
         while (match(TokenType.COMMA)) {
-            parseExpression();
+            int expression = parseExpression();
+            link(last, expression);
+            last = expression;
         }
         expect(TokenType.RPAREN);
+        return node(NodeKind.WRITE, token, first);
     }
 
-    private void parseExpression() {
-        parseOperand();
-        while (isRelationOperator(peek().getType())) {
-            next(); // оператор отношения
-            parseOperand();
+    //Разбор выражения по приоритетам операций (Пратт) с явными стеками операндов и операций вместо
+    //цепочки Выражение → Операнд → Слагаемое → Множитель, так что глубина скобок и цепочек not/- ограничена
+    //памятью, а не стеком потока. Язык, дерево (узлы создаются в том же порядке) и сообщения об ошибках —
+    //те же, что у рекурсивного спуска. Стеки общие: выражение не содержит других выражений, кроме как в скобках.
+    private int parseExpression() {
+        operandTop = 0;
+        operatorTop = 0;
+        int parens = 0;
+        while (true) {
+            // Ожидается множитель; not, - и ( перед ним откладываются на стек операций
+            TokenType current = peek();
+            int token = tokens.index();
+            switch (current) {
+                case IDENTIFIER:
+                    next();
+                    pushOperand(node(NodeKind.VARIABLE, token, -1));
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case TRUE:
+                case FALSE:
+                    next();
+                    pushOperand(node(NodeKind.LITERAL, token, -1));
+                    break;
+                case NOT:
+                case MINUS:
+                    next();
+                    pushOperator(token, UNARY);
+                    continue;
+                case LPAREN:
+                    next();
+                    pushOperator(token, PAREN);
+                    parens++;
+                    continue;
+                default:
+                    error("Ожидался множитель, найдено: " + current);
+            }
+            // Множитель прочитан: дальше бинарная операция, закрывающая скобка или конец выражения
+            while (true) {
+                while (operatorTop > 0 && operatorKinds[operatorTop - 1] == UNARY) reduce();
+                byte precedence = PRECEDENCE[peek().ordinal()];
+                if (precedence > 0) {
+                    while (operatorTop > 0 && operatorKinds[operatorTop - 1] >= precedence) reduce();
+                    pushOperator(tokens.index(), precedence);
+                    next();
+                    break;
+                }
+                if (parens == 0) {
+                    while (operatorTop > 0) reduce();
+                    return operands[--operandTop];
+                }
+                expect(TokenType.RPAREN);
+                while (operatorKinds[operatorTop - 1] != PAREN) reduce();
+                operatorTop--;
+                parens--;
+            }
         }
     }
 
-    private void parseOperand() {
-        parseTerm();
-        while (isAdditiveOperator(peek().getType())) {
-            next(); // плюс, минус, or
-            parseTerm();
+    //Снимает операцию со стека и строит её узел из операндов на вершине стека операндов
+    private void reduce() {
+        operatorTop--;
+        int token = operatorTokens[operatorTop];
+        if (operatorKinds[operatorTop] == UNARY) {
+            operands[operandTop - 1] = node(NodeKind.UNARY, token, operands[operandTop - 1]);
+        } else {
+            int right = operands[--operandTop];
+            int left = operands[operandTop - 1];
+            link(left, right);
+            operands[operandTop - 1] = node(NodeKind.BINARY, token, left);
         }
     }
 
-    private void parseTerm() {
-        parseFactor();
-        while (isMultiplicativeOperator(peek().getType())) {
-            next(); // умножение, деление, and
-            parseFactor();
-        }
+    private void pushOperand(int node) {
+        if (operandTop == operands.length) operands = Arrays.copyOf(operands, operandTop * 2);
+        operands[operandTop++] = node;
     }
 
-    private void parseFactor() {
-        Token current = peek();
-        switch (current.getType()) {
-            case IDENTIFIER:
-            case INTEGER:
-            case FLOAT:
-            case TRUE:
-            case FALSE:
-                next();
-                break;
-            case NOT:
-            case MINUS:
-                next();
-                parseFactor();
-                break;
-            case LPAREN:
-                next();
-                parseExpression();
-                expect(TokenType.RPAREN);
-                break;
-            default:
-                error("Ожидался множитель, найдено: " + current.getType());
+    private void pushOperator(int token, byte kind) {
+        if (operatorTop == operatorTokens.length) {
+            operatorTokens = Arrays.copyOf(operatorTokens, operatorTop * 2);
+            operatorKinds = Arrays.copyOf(operatorKinds, operatorTop * 2);
         }
-    }
-
-    private boolean isRelationOperator(TokenType type) {
-        return switch (type) {
-            case EQ, NEQ, LT, LE, GT, GE -> true;
-            default -> false;
-        };
-    }
-
-    private boolean isAdditiveOperator(TokenType type) {
-        return switch (type) {
-            case PLUS, MINUS, OR -> true;
-            default -> false;
-        };
-    }
-
-    private boolean isMultiplicativeOperator(TokenType type) {
-        return switch (type) {
-            case MUL, DIV, AND -> true;
-            default -> false;
-        };
+        operatorTokens[operatorTop] = token;
+        operatorKinds[operatorTop++] = kind;
     }
 
     private boolean isType(TokenType type) {
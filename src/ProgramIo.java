@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+//Ввод и вывод выполняемой программы через свои байтовые буферы (общий для Interpreter и BytecodeCompiler).
+//read разбирает слова входа, разделённые пробельными символами: int — десятичное число со знаком
+//(разбирается без выделения памяти), float — по правилам Double.parseDouble, bool — true/false без учёта
+//регистра. write печатает значения через пробел, writeLine() переводит строку. Вывод сбрасывается
+//перед ожиданием ввода и по flush(); ошибки ввода — RuntimeException с номером строки read.
+public class ProgramIo {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private int inputPosition = 0;
+    private int inputLimit = 0;
+    private final byte[] output = new byte[BUFFER_SIZE];
+    private int outputPosition = 0;
+    //Слово входа для разбора значения
+    private final char[] word = new char[64];
+    //Значение в операторе write уже напечатано: следующему нужен пробел перед ним
+    private boolean separate = false;
+
+    public ProgramIo(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public long readInt(int line) {
+        int length = readWord(line);
+        boolean negative = word[0] == '-';
+        int i = negative || word[0] == '+' ? 1 : 0;
+        if (i == length) throw inputError("целое число", length, line);
+        long value = 0; // накапливается со знаком минус, чтобы уместился Long.MIN_VALUE
+        for (; i < length; i++) {
+            int digit = word[i] - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw inputError("целое число", length, line);
+            }
+            value = value * 10 - digit;
+        }
+        if (negative) return value;
+        if (value == Long.MIN_VALUE) throw inputError("целое число", length, line);
+        return -value;
+    }
+
+    public double readFloat(int line) {
+        int length = readWord(line);
+        try {
+            return Double.parseDouble(new String(word, 0, length));
+        } catch (NumberFormatException e) {
+            throw inputError("вещественное число", length, line);
+        }
+    }
+
+    public boolean readBool(int line) {
+        int length = readWord(line);
+        String text = new String(word, 0, length);
+        if (text.equalsIgnoreCase("true")) return true;
+        if (text.equalsIgnoreCase("false")) return false;
+        throw inputError("true или false", length, line);
+    }
+
+    //Читает следующее слово входа в word; возвращает его длину
+    private int readWord(int line) {
+        int c = nextByte();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') c = nextByte();
+        if (c == -1) throw new RuntimeException("Нет входных данных для read в строке " + line);
+        int length = 0;
+        while (c != -1 && c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+            if (length == word.length) throw inputError("значение короче " + word.length + " символов", length, line);
+            word[length++] = (char) c;
+            c = nextByte();
+        }
+        return length;
+    }
+
+    private RuntimeException inputError(String expected, int length, int line) {
+        return new RuntimeException("Ожидалось " + expected + " на входе, но найдено: "
+                + new String(word, 0, length) + " (read в строке " + line + ")");
+    }
+
+    private int nextByte() {
+        if (inputPosition == inputLimit) {
+            flush(); // перед ожиданием ввода показать уже напечатанное
+            try {
+                inputLimit = in.read(input, 0, input.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            inputPosition = 0;
+            if (inputLimit <= 0) {
+                inputLimit = 0;
+                return -1;
+            }
+        }
+        return input[inputPosition++] & 0xFF;
+    }
+
+    public void writeInt(long value) {
+        separator();
+        if (outputPosition + 20 > output.length) flush();
+        if (value < 0) output[outputPosition++] = '-';
+        else value = -value; // цифры — из отрицательного значения, чтобы уместился Long.MIN_VALUE
+        int start = outputPosition;
+        do {
+            output[outputPosition++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = outputPosition - 1; i < j; i++, j--) {
+            byte digit = output[i];
+            output[i] = output[j];
+            output[j] = digit;
+        }
+    }
+
+    public void writeFloat(double value) {
+        separator();
+        writeAscii(Double.toString(value));
+    }
+
+    public void writeBool(boolean value) {
+        separator();
+        writeBytes(value ? TRUE : FALSE);
+    }
+
+    //Конец оператора write
+    public void writeLine() {
+        writeByte('\n');
+        separate = false;
+    }
+
+    //Ошибка выполнения: деление на ноль в строке line
+    public static RuntimeException divisionByZero(int line) {
+        return new RuntimeException("Деление на ноль в строке " + line);
+    }
+
+    private void separator() {
+        if (separate) writeByte(' ');
+        separate = true;
+    }
+
+    private void writeAscii(String text) {
+        for (int i = 0; i < text.length(); i++) writeByte(text.charAt(i));
+    }
+
+    private void writeBytes(byte[] bytes) {
+        for (byte b : bytes) writeByte(b);
+    }
+
+    private void writeByte(int b) {
+        if (outputPosition == output.length) flush();
+        output[outputPosition++] = (byte) b;
+    }
+
+    public void flush() {
+        if (outputPosition == 0) return;
+        try {
+            out.write(output, 0, outputPosition);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        outputPosition = 0;
+    }
+}
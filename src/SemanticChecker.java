@@ -0,0 +1,251 @@
+import java.util.Arrays;
+
+//Семантическая проверка разобранной программы за один обход дерева (Ast.walk, без рекурсии):
+//каждая переменная описана до использования и только один раз, типы совместимы в присваиваниях,
+//условиях, границах циклов и операциях. Переменные ищутся в SymbolTable по номеру идентификатора,
+//типы выражений считаются снизу вверх на стеке и запоминаются по номеру узла (см. typeOf()).
+//Правила типов:
+//  + - * / — над числами, float, если хотя бы один операнд float, иначе int;
+//  or and not — над bool; < <= > >= — над числами, = <> — над двумя числами или двумя bool, результат bool;
+//  переменной float можно присвоить int, в остальных случаях типы должны совпадать;
+//  условие if и while — bool; переменная цикла for числовая, граница присваивается ей.
+public class SemanticChecker {
+    private static final ValueType[] TYPES = ValueType.values();
+    private static final byte ERROR = (byte) ValueType.ERROR.ordinal();
+
+    private final Ast ast;
+    private final LexemeTable table;
+    private final SymbolTable symbols = new SymbolTable();
+    private final Diagnostics diagnostics = new Diagnostics();
+    //Тип каждого узла-выражения (ordinal ValueType), для остальных узлов не используется
+    private final byte[] nodeTypes;
+    //Стек типов вычисленных, но ещё не использованных выражений
+    private byte[] values = new byte[16];
+    private int valueTop = 0;
+    //Стек узлов от корня до текущего и высота стека типов при входе в каждый из них
+    private int[] path = new int[16];
+    private int[] pathValues = new int[16];
+    private int pathTop = 0;
+
+    public SemanticChecker(Ast ast) {
+        this.ast = ast;
+        this.table = ast.getTable();
+        this.nodeTypes = new byte[ast.size()];
+    }
+
+    //Проверяет программу; true, если ошибок нет
+    public boolean check() {
+        ast.walk(new AstVisitor() {
+            @Override
+            public boolean enter(Ast ast, int node) {
+                return enterNode(node);
+            }
+
+            @Override
+            public void exit(Ast ast, int node) {
+                exitNode(node);
+            }
+        });
+        return diagnostics.isEmpty();
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    //Тип выражения node (ERROR — в нём ошибка)
+    public ValueType typeOf(int node) {
+        return TYPES[nodeTypes[node]];
+    }
+
+    private boolean enterNode(int node) {
+        if (pathTop == path.length) {
+            path = Arrays.copyOf(path, pathTop * 2);
+            pathValues = Arrays.copyOf(pathValues, pathTop * 2);
+        }
+        path[pathTop] = node;
+        pathValues[pathTop++] = valueTop;
+        if (ast.kind(node) != NodeKind.DECLARATION) return true;
+        ValueType type = declaredType(ast.tokenType(node));
+        for (int variable = ast.firstChild(node); variable != -1; variable = ast.nextSibling(variable)) {
+            int token = ast.token(variable);
+            int id = table.identifierId(token);
+            if (!symbols.declare(id, type, token)) {
+                report(Diagnostic.Kind.DUPLICATE_DECLARATION, variable, "Переменная '" + table.text(token)
+                        + "' уже описана в строке " + table.line(symbols.declaration(id)));
+            }
+        }
+        return false;
+    }
+
+    private void exitNode(int node) {
+        int entered = pathValues[--pathTop];
+        switch (ast.kind(node)) {
+            case VARIABLE:
+                push(node, variableType(node));
+                break;
+            case LITERAL:
+                push(node, literalType(ast.tokenType(node)));
+                break;
+            case UNARY:
+                push(node, unaryType(node, pop()));
+                break;
+            case BINARY: {
+                byte right = pop();
+                push(node, binaryType(node, pop(), right));
+                break;
+            }
+            case ASSIGN: {
+                byte value = pop();
+                byte variable = pop();
+                checkAssignment(ast.firstChild(node), variable, value);
+                break;
+            }
+            case READ:
+            case WRITE:
+                valueTop = entered;
+                break;
+            default:
+                break;
+        }
+        if (pathTop == 0) return;
+        int parent = path[pathTop - 1];
+        NodeKind parentKind = ast.kind(parent);
+        if ((parentKind == NodeKind.IF || parentKind == NodeKind.WHILE) && node == ast.firstChild(parent)) {
+            byte condition = pop();
+            if (condition != ERROR && TYPES[condition] != ValueType.BOOL) {
+                report(Diagnostic.Kind.TYPE_MISMATCH, node, "Условие должно иметь тип BOOL, а не " + TYPES[condition]);
+            }
+        } else if (parentKind == NodeKind.FOR && node == ast.child(parent, 1)) {
+            checkLimit(ast.firstChild(ast.firstChild(parent)), pop(), node);
+        }
+    }
+
+    //Тип переменной в выражении; о неописанной сообщается при первом использовании
+    private ValueType variableType(int node) {
+        int id = table.identifierId(ast.token(node));
+        ValueType type = symbols.type(id);
+        if (type != null) return type;
+        report(Diagnostic.Kind.UNDECLARED_VARIABLE, node, "Переменная '" + ast.text(node) + "' не описана");
+        symbols.declare(id, ValueType.ERROR, -1);
+        return ValueType.ERROR;
+    }
+
+    private ValueType unaryType(int node, byte operand) {
+        if (operand == ERROR) return ValueType.ERROR;
+        ValueType type = TYPES[operand];
+        boolean not = ast.tokenType(node) == TokenType.NOT;
+        if (not ? type == ValueType.BOOL : type.isNumeric()) return type;
+        report(Diagnostic.Kind.TYPE_MISMATCH, node, "Операция " + ast.text(node) + " неприменима к типу " + type);
+        return ValueType.ERROR;
+    }
+
+    private ValueType binaryType(int node, byte leftType, byte rightType) {
+        if (leftType == ERROR || rightType == ERROR) return ValueType.ERROR;
+        TokenType operation = ast.tokenType(node);
+        ValueType result;
+        switch (operation) {
+            case PLUS:
+            case MINUS:
+            case MUL:
+            case DIV:
+                result = ValueType.INT;
+                break;
+            default:
+                result = ValueType.BOOL;
+        }
+        ValueType left = TYPES[leftType];
+        ValueType right = TYPES[rightType];
+        boolean numbers = left.isNumeric() && right.isNumeric();
+        boolean valid;
+        switch (operation) {
+            case PLUS:
+            case MINUS:
+            case MUL:
+            case DIV:
+                valid = numbers;
+                if (left == ValueType.FLOAT || right == ValueType.FLOAT) result = ValueType.FLOAT;
+                break;
+            case OR:
+            case AND:
+                valid = left == ValueType.BOOL && right == ValueType.BOOL;
+                break;
+            case EQ:
+            case NEQ:
+                valid = numbers || left == ValueType.BOOL && right == ValueType.BOOL;
+                break;
+            default:
+                valid = numbers;
+        }
+        if (valid) return result;
+        report(Diagnostic.Kind.TYPE_MISMATCH, node, "Операция " + ast.text(node) + " неприменима к типам "
+                + left + " и " + right);
+        return ValueType.ERROR;
+    }
+
+    private void checkAssignment(int variable, byte variableType, byte valueType) {
+        if (assignable(variableType, valueType)) return;
+        report(Diagnostic.Kind.TYPE_MISMATCH, variable, "Нельзя присвоить значение типа " + TYPES[valueType]
+                + " переменной '" + ast.text(variable) + "' типа " + TYPES[variableType]);
+    }
+
+    //Переменная цикла должна быть числовой, а граница — присваиваемой ей
+    private void checkLimit(int variable, byte limitType, int limit) {
+        int id = table.identifierId(ast.token(variable));
+        ValueType type = symbols.type(id);
+        if (type == null || type == ValueType.ERROR) return;
+        if (!type.isNumeric()) {
+            report(Diagnostic.Kind.TYPE_MISMATCH, variable, "Переменная цикла '" + ast.text(variable)
+                    + "' должна быть числовой, а не " + type);
+        } else if (!assignable((byte) type.ordinal(), limitType)) {
+            report(Diagnostic.Kind.TYPE_MISMATCH, limit, "Граница цикла типа " + TYPES[limitType]
+                    + " несовместима с переменной '" + ast.text(variable) + "' типа " + type);
+        }
+    }
+
+    private static boolean assignable(byte variable, byte value) {
+        return variable == value || variable == ERROR || value == ERROR
+                || TYPES[variable] == ValueType.FLOAT && TYPES[value] == ValueType.INT;
+    }
+
+    private static ValueType declaredType(TokenType type) {
+        switch (type) {
+            case INT:
+                return ValueType.INT;
+            case FLOAT_TYPE:
+                return ValueType.FLOAT;
+            default:
+                return ValueType.BOOL;
+        }
+    }
+
+    private static ValueType literalType(TokenType type) {
+        switch (type) {
+            case INTEGER:
+                return ValueType.INT;
+            case FLOAT:
+                return ValueType.FLOAT;
+            default:
+                return ValueType.BOOL;
+        }
+    }
+
+    private void push(int node, ValueType type) {
+        if (valueTop == values.length) values = Arrays.copyOf(values, valueTop * 2);
+        nodeTypes[node] = (byte) type.ordinal();
+        values[valueTop++] = (byte) type.ordinal();
+    }
+
+    private byte pop() {
+        return values[--valueTop];
+    }
+
+    private void report(Diagnostic.Kind kind, int node, String message) {
+        int token = ast.token(node);
+        diagnostics.report(kind, table.offset(token), table.line(token), table.column(token), message);
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+//Таблица символов: тип и лексема описания каждой переменной по её номеру в IdentifierTable, так что поиск —
+//обращение к массиву, без хеширования имён. Области видимости вложены: описание во внутренней области
+//скрывает внешнее до exitScope(), которая возвращает скрытые описания из журнала.
+public class SymbolTable {
+    private static final ValueType[] TYPES = ValueType.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    //По номеру идентификатора: тип (ordinal + 1, 0 — не описан), лексема описания и глубина его области
+    private byte[] types;
+    private int[] declarations;
+    private int[] depths;
+    private int depth = 0;
+    //Журнал описаний во вложенных областях: номер, прежние тип, лексема и глубина — по 4 числа на запись
+    private int[] log = new int[16];
+    private int logTop = 0;
+    //Начала областей в журнале
+    private int[] scopes = new int[8];
+
+    public SymbolTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    //capacity — ожидаемое число идентификаторов (IdentifierTable.size() + 1)
+    public SymbolTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        types = new byte[capacity];
+        declarations = new int[capacity];
+        depths = new int[capacity];
+    }
+
+    public void enterScope() {
+        if (depth + 1 == scopes.length) scopes = Arrays.copyOf(scopes, scopes.length * 2);
+        scopes[++depth] = logTop;
+    }
+
+    public void exitScope() {
+        if (depth == 0) {
+            throw new IllegalStateException("No scope to exit");
+        }
+        int start = scopes[depth--];
+        while (logTop > start) {
+            logTop -= 4;
+            int id = log[logTop];
+            types[id] = (byte) log[logTop + 1];
+            declarations[id] = log[logTop + 2];
+            depths[id] = log[logTop + 3];
+        }
+    }
+
+    //Описывает переменную id в текущей области; false, если в этой области она уже описана
+    public boolean declare(int id, ValueType type, int token) {
+        if (id >= types.length) {
+            int capacity = Math.max(id + 1, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            declarations = Arrays.copyOf(declarations, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+        if (types[id] != 0 && depths[id] == depth) return false;
+        if (depth > 0) {
+            if (logTop + 4 > log.length) log = Arrays.copyOf(log, log.length * 2);
+            log[logTop] = id;
+            log[logTop + 1] = types[id];
+            log[logTop + 2] = declarations[id];
+            log[logTop + 3] = depths[id];
+            logTop += 4;
+        }
+        types[id] = (byte) (type.ordinal() + 1);
+        declarations[id] = token;
+        depths[id] = depth;
+        return true;
+    }
+
+    public boolean isDeclared(int id) {
+        return id < types.length && types[id] != 0;
+    }
+
+    //Тип переменной или null, если она не описана
+    public ValueType type(int id) {
+        return isDeclared(id) ? TYPES[types[id] - 1] : null;
+    }
+
+    //Номер лексемы описания переменной (-1, если она не описана или описание не связано с лексемой)
+    public int declaration(int id) {
+        return isDeclared(id) ? declarations[id] : -1;
+    }
+}
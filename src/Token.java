@@ -1,23 +1,59 @@
 public class Token {
     private final TokenType type;
-    private final String value;
+    private String value;
+    private final CharSource source;
+    private final int offset;
+    private final int length;
     private final int line;
     private final int column;
+    private final int identifierId;
 
     public Token(TokenType type, String value, int line, int column) {
+        this(type, value, line, column, 0);
+    }
+
+    public Token(TokenType type, String value, int line, int column, int identifierId) {
         this.type = type;
         this.value = value;
+        this.source = null;
+        this.offset = -1;
+        this.length = value.length();
+        this.line = line;
+        this.column = column;
+        this.identifierId = identifierId;
+    }
+
+    //Лексема, ссылающаяся на диапазон [offset, offset + length) источника.
+    //Строка значения строится только при первом вызове getValue().
+    public Token(TokenType type, CharSource source, int offset, int length, int line, int column) {
+        this(type, source, offset, length, line, column, 0);
+    }
+
+    public Token(TokenType type, CharSource source, int offset, int length, int line, int column, int identifierId) {
+        this.type = type;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.line = line;
         this.column = column;
+        this.identifierId = identifierId;
     }
 
     public TokenType getType() { return type; }
-    public String getValue() { return value; }
+    public String getValue() {
+        if (value == null) value = source.text(offset, offset + length);
+        return value;
+    }
+    //Смещение начала лексемы во входе или -1, если лексема создана из готовой строки
+    public int getOffset() { return offset; }
+    public int getLength() { return length; }
     public int getLine() { return line; }
     public int getColumn() { return column; }
+    //Номер идентификатора в IdentifierTable (0, если лексема не идентификатор)
+    public int getIdentifierId() { return identifierId; }
 
     @Override
     public String toString() {
-        return String.format("Token(%s, '%s', %d:%d)", type, value, line, column);
+        return String.format("Token(%s, '%s', %d:%d)", type, getValue(), line, column);
     }
 }
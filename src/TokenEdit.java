@@ -0,0 +1,22 @@
+//Результат Lexer.edit(): лексемы [from, from + removed) таблицы заменены inserted новыми лексемами,
+//номера лексем за заменой сдвинулись на inserted - removed
+public class TokenEdit {
+    private final int from;
+    private final int removed;
+    private final int inserted;
+
+    public TokenEdit(int from, int removed, int inserted) {
+        this.from = from;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    public int getFrom() { return from; }
+    public int getRemoved() { return removed; }
+    public int getInserted() { return inserted; }
+
+    @Override
+    public String toString() {
+        return String.format("[%d, %d) -> %d", from, from + removed, inserted);
+    }
+}
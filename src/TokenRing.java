@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+//Кольцевой буфер лексем между потоком лексера (единственный писатель) и парсером (единственный читатель).
+//Лексемы за позицией парсера перезаписываются, так что память ограничена размером кольца.
+//Позиции обеих сторон публикуются через lazySet; каждая сторона перечитывает чужую позицию,
+//только когда исчерпала известную ей часть кольца.
+final class TokenRing implements TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int SPINS = 100;
+
+    private final int mask;
+    private final byte[] types;
+    private final int[] lines;
+    private final int[] columns;
+    private final int[] offsets;
+    private final int[] lengths;
+    //Текст лексем, если источник не хранит его после release() (иначе null)
+    private final String[] texts;
+    private final CharSource source;
+
+    private final AtomicLong written = new AtomicLong();  // лексем записано лексером
+    private final AtomicLong consumed = new AtomicLong(); // лексем пройдено парсером
+    private volatile boolean closed;
+    private Throwable failure; // ошибка лексера; публикуется вместе с записью позиции
+    private long failedAt = Long.MAX_VALUE;
+
+    // Поля писателя
+    private long writeSeq;
+    private long consumedCache;
+    private int waits;
+    // Поля читателя
+    private long readSeq;
+    private long writtenCache;
+    private boolean pastEnd;
+
+    TokenRing(CharSource source, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.types = new byte[size];
+        this.lines = new int[size];
+        this.columns = new int[size];
+        this.offsets = new int[size];
+        this.lengths = new int[size];
+        this.texts = source.retainsText() ? null : new String[size];
+        this.source = source;
+    }
+
+    //Писатель: кладёт лексему, ожидая места в кольце. Возвращает false, если читатель закрыл кольцо.
+    boolean put(TokenType type, int line, int column, int offset, int length) {
+        while (writeSeq - consumedCache > mask) {
+            consumedCache = consumed.get();
+            if (writeSeq - consumedCache > mask && !await()) return false;
+        }
+        int slot = (int) writeSeq & mask;
+        types[slot] = (byte) type.ordinal();
+        lines[slot] = line;
+        columns[slot] = column;
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        if (texts != null) texts[slot] = source.text(offset, offset + length);
+        written.lazySet(++writeSeq);
+        return true;
+    }
+
+    //Писатель: ошибка лексера (в том числе Error — OutOfMemoryError, StackOverflowError) станет видна
+    //читателю, когда он дойдёт до этой позиции; без неё читатель ждал бы следующую лексему вечно
+    void fail(Throwable e) {
+        failure = e;
+        failedAt = writeSeq;
+        written.lazySet(writeSeq + 1); // позиция ошибки; слот не используется
+    }
+
+    //Ожидание другой стороны: короткое вращение, затем уступаем процессор. false — кольцо закрыто.
+    private boolean await() {
+        if (closed) return false;
+        if (++waits < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            waits = 0;
+            Thread.yield();
+        }
+        return true;
+    }
+
+    //Читатель: ждёт, пока лексема readSeq будет записана
+    private int slot() {
+        while (readSeq >= writtenCache) {
+            writtenCache = written.get();
+            if (readSeq >= writtenCache) {
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+        }
+        if (readSeq == failedAt) rethrow();
+        return (int) readSeq & mask;
+    }
+
+    private void rethrow() {
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        throw new IllegalStateException("Lexer thread failed", failure);
+    }
+
+    @Override
+    public TokenType type() {
+        return pastEnd ? TokenType.EOF : TYPES[types[slot()]];
+    }
+
+    @Override
+    public int line() {
+        return pastEnd ? -1 : lines[slot()];
+    }
+
+    @Override
+    public int column() {
+        return pastEnd ? -1 : columns[slot()];
+    }
+
+    @Override
+    public String text() {
+        if (pastEnd) return "";
+        int slot = slot();
+        return texts != null ? texts[slot] : source.text(offsets[slot], offsets[slot] + lengths[slot]);
+    }
+
+    @Override
+    public int offset() {
+        return pastEnd ? -1 : offsets[slot()];
+    }
+
+    @Override
+    public int index() {
+        return pastEnd ? (int) readSeq + 1 : (int) readSeq;
+    }
+
+    //За EOF лексер ничего не пишет: читатель остаётся на нём и дальше, как курсор таблицы, видит EOF с позицией -1:-1
+    @Override
+    public void advance() {
+        if (pastEnd) return;
+        if (TYPES[types[slot()]] == TokenType.EOF) {
+            pastEnd = true;
+            return;
+        }
+        readSeq++;
+        consumed.lazySet(readSeq);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
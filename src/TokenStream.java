@@ -0,0 +1,23 @@
+//Последовательность лексем для синтаксического анализатора: текущая лексема и переход к следующей.
+//За концом последовательности текущая лексема — EOF с позицией -1:-1.
+public interface TokenStream {
+    TokenType type();
+
+    int line();
+
+    int column();
+
+    String text();
+
+    //Смещение текущей лексемы во входе (-1, если оно неизвестно)
+    int offset();
+
+    //Порядковый номер текущей лексемы (от 0)
+    int index();
+
+    void advance();
+
+    //Освобождает ресурсы последовательности (например, останавливает поток лексера)
+    default void close() {
+    }
+}
@@ -0,0 +1,12 @@
+//Типы значений программы: переменных (по описанию int | float | bool) и выражений
+public enum ValueType {
+    INT,
+    FLOAT,
+    BOOL,
+    // Тип выражения с ошибкой: совместим с любым, чтобы одна ошибка не порождала следующие
+    ERROR;
+
+    public boolean isNumeric() {
+        return this == INT || this == FLOAT;
+    }
+}